@@ -63,10 +63,15 @@ public interface BedrockErrorCodes extends com.tdoer.springboot.http.StatusCodes
     @ReasonPhrase("Application ({0}) is not supported by the context instance ({1})")
     int APPLICATION_NOT_SUPPORTED_BY_CONTEXT_INSTANCE = 4012;
 
+    @ReasonPhrase("Malformed context path {0} at position {1}")
+    int MALFORMED_CONTEXT_PATH = 4013;
+
     /* ----------------------------------------------------
      * Server-side error codes: 5001 ~ 5200
      * ----------------------------------------------------
      */
+    @ReasonPhrase("Cloud environment is not resolved in {0} milliseconds")
+    int ENV_RESOLUTION_TIMEOUT = 5001;
 
 
 }
@@ -72,6 +72,22 @@ public class CloudEnvironment {
         digest = generateDigest();
     }
 
+    /**
+     * Constructor for the environments which load their objects on demand, say,
+     * {@link LazyCloudEnvironment}. Such a subclass must override all the getters of
+     * the environment's objects.
+     *
+     * @param digest   Digest of the environment
+     * @param language Language of the environment
+     */
+    protected CloudEnvironment(EnvironmentDigest digest, Locale language) {
+        Assert.notNull(digest, "EnvironmentDigest cannot be null");
+        Assert.notNull(language, "Language cannot be null");
+
+        this.digest = digest;
+        this.language = language;
+    }
+
     protected EnvironmentDigest generateDigest(){
         EnvironmentDigest digest = new EnvironmentDigest();
         digest.setTenantId(tenant.getId());
@@ -100,15 +116,15 @@ public class CloudEnvironment {
     }
 
     public Client getClient() {
-        return tenantClient.getClient();
+        return getTenantClient().getClient();
     }
 
     public Product getProduct() {
-        return productRental.getProduct();
+        return getProductRental().getProduct();
     }
 
     public ClientConfig getClientConfig() {
-        return tenantClient.getClient().getClientConfig();
+        return getClient().getClientConfig();
     }
 
     public ContextInstance getContextInstance() {
@@ -116,11 +132,11 @@ public class CloudEnvironment {
     }
 
     public ContextConfig getContextConfig() {
-        return contextInstance.getContextConfig();
+        return getContextInstance().getContextConfig();
     }
 
     public ContextPath getContextPath() {
-        return contextInstance.getContextPath();
+        return getContextInstance().getContextPath();
     }
 
     public Application getApplication() {
@@ -132,7 +148,7 @@ public class CloudEnvironment {
     }
 
     public Long getTenantId() {
-        return tenant.getId();
+        return getTenant().getId();
     }
 
     public String getClientId() {
@@ -155,11 +171,11 @@ public class CloudEnvironment {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("CloudEnvironment{");
-        sb.append("Tenant[").append(tenant.getId()).append(",").append(tenant.getCode()).append(",").append(tenant.getName()).append("],");
+        sb.append("Tenant[").append(getTenant().getId()).append(",").append(getTenant().getCode()).append(",").append(getTenant().getName()).append("],");
         sb.append("TenantClient[").append(getClient().getId()).append(",").append(getClient().getName()).append("],");
         sb.append("Product[").append(getProduct().getId()).append(",").append(getProduct().getName()).append("],");
-        sb.append("ContextInstance[").append(contextInstance.getContextPath().getAbsoluteValue()).append(",").append(contextInstance.getInstanceName()).append("],");
-        sb.append("Application[").append(application.getId()).append(",").append(application.getName()).append("],");
+        sb.append("ContextInstance[").append(getContextInstance().getContextPath().getAbsoluteValue()).append(",").append(getContextInstance().getInstanceName()).append("],");
+        sb.append("Application[").append(getApplication().getId()).append(",").append(getApplication().getName()).append("],");
         sb.append("Language[").append(LocaleUtil.getLocale(language)).append("]");
         sb.append("}");
         return sb.toString();
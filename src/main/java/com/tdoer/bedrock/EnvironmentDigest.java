@@ -15,16 +15,56 @@
  */
 package com.tdoer.bedrock;
 
-import com.tdoer.springboot.util.LocaleUtil;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
 /**
- * @Description
+ * @Description Digest of a cloud environment, carried by internal requests behind the gateway
+ * in the header {@link CloudConstants#ENVIRONMENT_DIGEST}.
+ * <p>
+ * A digest string is either the legacy text format, fields delimited by '|', or the compact
+ * format, base64url of a versioned binary encoding (presence flags, varint tenant Id,
+ * length-prefixed Ids and packed context path pairs). Both formats are accepted by
+ * {@link #fromDigestString(String)}.
+ * </p>
+ * <p>
+ * {@link #toDigestString()} writes the text format unless the compact format is enabled by
+ * {@link #setCompactFormatEnabled(boolean)}, or the system property
+ * {@value #COMPACT_FORMAT_PROPERTY}. Enable it only after every service reading the digest
+ * accepts the compact format.
+ * </p>
  * @author Htinker Hu (htinker@163.com)
  * @create 2017-09-19
  */
 public class EnvironmentDigest {
 
+    public static final String COMPACT_FORMAT_PROPERTY = "bedrock.environment-digest.compact";
+
+    protected static final int COMPACT_VERSION = 1;
+
+    private static final int HAS_TENANT_ID = 1;
+    private static final int HAS_PRODUCT_ID = 1 << 1;
+    private static final int HAS_CLIENT_ID = 1 << 2;
+    private static final int HAS_CONTEXT_PATH = 1 << 3;
+    private static final int HAS_APPLICATION_ID = 1 << 4;
+    private static final int HAS_LANGUAGE = 1 << 5;
+    private static final int RAW_CONTEXT_PATH = 1 << 6;
+
+    private static final int[] BASE64URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64URL_VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL_VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private static volatile boolean compactFormatEnabled = Boolean.getBoolean(COMPACT_FORMAT_PROPERTY);
+
     protected Long tenantId;
 
     protected String productId;
@@ -85,8 +125,38 @@ public class EnvironmentDigest {
         this.language = language;
     }
 
+    public static boolean isCompactFormatEnabled() {
+        return compactFormatEnabled;
+    }
+
+    /**
+     * Switch {@link #toDigestString()} to the compact format, or back to the text format
+     *
+     * @param enabled true to write the compact format
+     */
+    public static void setCompactFormatEnabled(boolean enabled) {
+        compactFormatEnabled = enabled;
+    }
+
+    /**
+     * Parse a digest string of either the compact format or the legacy text format.
+     *
+     * @param digestStr Digest string
+     * @return Environment digest
+     * @throws IllegalArgumentException if the digest string is malformed
+     */
     public static EnvironmentDigest fromDigestString(String digestStr) {
+        if (digestStr.indexOf('|') >= 0) {
+            return fromTextDigestString(digestStr);
+        }
+        return fromCompactDigestString(digestStr);
+    }
+
+    protected static EnvironmentDigest fromTextDigestString(String digestStr) {
         String[] arr = StringUtils.delimitedListToStringArray(digestStr, "|");
+        if (arr.length < 6) {
+            throw new IllegalArgumentException("Malformed environment digest: " + digestStr);
+        }
         int i = 0;
         EnvironmentDigest digest = new EnvironmentDigest();
         digest.setTenantId(Long.parseLong(arr[i++]));
@@ -98,7 +168,106 @@ public class EnvironmentDigest {
         return digest;
     }
 
+    protected static EnvironmentDigest fromCompactDigestString(String digestStr) {
+        CompactReader reader = new CompactReader(digestStr);
+        int version = reader.readByte();
+        if (version != COMPACT_VERSION) {
+            throw new IllegalArgumentException("Unsupported environment digest version: " + version);
+        }
+        int flags = reader.readByte();
+
+        EnvironmentDigest digest = new EnvironmentDigest();
+        if ((flags & HAS_TENANT_ID) != 0) {
+            digest.setTenantId(reader.readVarLong());
+        }
+        if ((flags & HAS_PRODUCT_ID) != 0) {
+            digest.setProductId(reader.readString());
+        }
+        if ((flags & HAS_CLIENT_ID) != 0) {
+            digest.setClientId(reader.readString());
+        }
+        if ((flags & HAS_CONTEXT_PATH) != 0) {
+            if ((flags & RAW_CONTEXT_PATH) != 0) {
+                digest.setContextPath(reader.readString());
+            } else {
+                digest.setContextPath(reader.readContextPath());
+            }
+        }
+        if ((flags & HAS_APPLICATION_ID) != 0) {
+            digest.setApplicationId(reader.readString());
+        }
+        if ((flags & HAS_LANGUAGE) != 0) {
+            digest.setLanguage(reader.readString());
+        }
+        if (reader.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected trailing data in environment digest");
+        }
+        return digest;
+    }
+
+    /**
+     * Digest string of the text format, or the compact format if it's enabled
+     *
+     * @return Digest string
+     */
     public String toDigestString() {
+        return compactFormatEnabled ? toCompactDigestString() : toTextDigestString();
+    }
+
+    /**
+     * Digest string of the compact format
+     *
+     * @return Digest string
+     */
+    public String toCompactDigestString() {
+        CompactWriter writer = new CompactWriter();
+        writer.writeByte(COMPACT_VERSION);
+
+        long[] pairs = contextPath == null ? null : packContextPath(contextPath);
+        int flags = 0;
+        flags |= tenantId != null ? HAS_TENANT_ID : 0;
+        flags |= productId != null ? HAS_PRODUCT_ID : 0;
+        flags |= clientId != null ? HAS_CLIENT_ID : 0;
+        flags |= contextPath != null ? HAS_CONTEXT_PATH : 0;
+        flags |= (contextPath != null && pairs == null) ? RAW_CONTEXT_PATH : 0;
+        flags |= applicationId != null ? HAS_APPLICATION_ID : 0;
+        flags |= language != null ? HAS_LANGUAGE : 0;
+        writer.writeByte(flags);
+
+        if (tenantId != null) {
+            writer.writeVarLong(tenantId);
+        }
+        if (productId != null) {
+            writer.writeString(productId);
+        }
+        if (clientId != null) {
+            writer.writeString(clientId);
+        }
+        if (contextPath != null) {
+            if (pairs == null) {
+                writer.writeString(contextPath);
+            } else {
+                writer.writeVarLong(pairs.length / 2);
+                for (long v : pairs) {
+                    writer.writeVarLong(v);
+                }
+            }
+        }
+        if (applicationId != null) {
+            writer.writeString(applicationId);
+        }
+        if (language != null) {
+            writer.writeString(language);
+        }
+        return writer.toBase64Url();
+    }
+
+    /**
+     * Digest string of the legacy text format, accepted by all services
+     *
+     * @return Digest string
+     */
+    public String toTextDigestString() {
         StringBuilder sb = new StringBuilder();
         sb.append(tenantId).append("|");
         sb.append(productId).append("|");
@@ -109,6 +278,58 @@ public class EnvironmentDigest {
         return sb.toString();
     }
 
+    /**
+     * Pack context path 'type.id-type.id' into (type, id) pairs. Numbers with leading zeros,
+     * say, '01.1', aren't packed, since they couldn't be restored, and go raw.
+     *
+     * @param value Context path value
+     * @return Pairs, or {@code null} if the value isn't of the canonical format
+     */
+    private static long[] packContextPath(String value) {
+        int len = value.length();
+        if (len == 0) {
+            return null;
+        }
+        int segments = 1;
+        for (int i = 0; i < len; i++) {
+            if (value.charAt(i) == '-') {
+                segments++;
+            }
+        }
+        long[] pairs = new long[segments * 2];
+        int p = 0;
+        int i = 0;
+        while (i < len) {
+            // type
+            int start = i;
+            long type = 0;
+            while (i < len && value.charAt(i) >= '0' && value.charAt(i) <= '9' && i - start < 9) {
+                type = type * 10 + (value.charAt(i++) - '0');
+            }
+            if (i == start || i >= len || value.charAt(i) != '.' || hasLeadingZero(value, start, i)) {
+                return null;
+            }
+            i++;
+            // instance Id
+            start = i;
+            long id = 0;
+            while (i < len && value.charAt(i) >= '0' && value.charAt(i) <= '9' && i - start < 18) {
+                id = id * 10 + (value.charAt(i++) - '0');
+            }
+            if (i == start || (i < len && value.charAt(i) != '-') || i == len - 1 || hasLeadingZero(value, start, i)) {
+                return null;
+            }
+            i++;
+            pairs[p++] = type;
+            pairs[p++] = id;
+        }
+        return p == pairs.length ? pairs : null;
+    }
+
+    private static boolean hasLeadingZero(String value, int start, int end) {
+        return end - start > 1 && value.charAt(start) == '0';
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -122,4 +343,120 @@ public class EnvironmentDigest {
         sb.append("]");
         return sb.toString();
     }
+
+    private static final class CompactWriter {
+        private byte[] buf = new byte[64];
+
+        private int len;
+
+        void writeByte(int b) {
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, len * 2);
+            }
+            buf[len++] = (byte) b;
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            for (byte b : bytes) {
+                writeByte(b);
+            }
+        }
+
+        String toBase64Url() {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(buf, len));
+        }
+    }
+
+    /**
+     * Reads bytes straight from base64url characters of the digest string
+     */
+    private static final class CompactReader {
+        private final String chars;
+
+        private int pos;
+
+        private int bits;
+
+        private int bitCount;
+
+        CompactReader(String chars) {
+            this.chars = chars;
+        }
+
+        boolean hasRemaining() {
+            // Remaining bits less than a byte are padding bits
+            return pos < chars.length();
+        }
+
+        int readByte() {
+            while (bitCount < 8) {
+                if (pos >= chars.length()) {
+                    throw new IllegalArgumentException("Truncated environment digest");
+                }
+                char c = chars.charAt(pos++);
+                int v = c < 128 ? BASE64URL_VALUES[c] : -1;
+                if (v < 0) {
+                    throw new IllegalArgumentException("Illegal character '" + c + "' in environment digest at " + (pos - 1));
+                }
+                bits = (bits << 6) | v;
+                bitCount += 6;
+            }
+            bitCount -= 8;
+            return (bits >>> bitCount) & 0xFF;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in environment digest");
+        }
+
+        int readLength() {
+            long len = readVarLong();
+            if (len < 0 || len > chars.length()) {
+                throw new IllegalArgumentException("Illegal length in environment digest: " + len);
+            }
+            return (int) len;
+        }
+
+        String readString() {
+            int len = readLength();
+            byte[] bytes = new byte[len];
+            for (int i = 0; i < len; i++) {
+                bytes[i] = (byte) readByte();
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String readContextPath() {
+            int count = readLength();
+            if (count == 0) {
+                throw new IllegalArgumentException("Empty context path in environment digest");
+            }
+            StringBuilder sb = new StringBuilder(count * 8);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sb.append('-');
+                }
+                sb.append(readVarLong()).append('.').append(readVarLong());
+            }
+            return sb.toString();
+        }
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock;
+
+import com.tdoer.bedrock.application.Application;
+import com.tdoer.bedrock.application.ApplicationRepository;
+import com.tdoer.bedrock.context.ContextInstance;
+import com.tdoer.bedrock.context.ContextInstanceCenter;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextPathParser;
+import com.tdoer.bedrock.context.InvalidContextPathException;
+import com.tdoer.bedrock.tenant.ProductRental;
+import com.tdoer.bedrock.tenant.RentalCenter;
+import com.tdoer.bedrock.tenant.Tenant;
+import com.tdoer.bedrock.tenant.TenantClient;
+import com.tdoer.springboot.util.LocaleUtil;
+import org.springframework.util.Assert;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * @Description A cloud environment backed by an {@link EnvironmentDigest}. Tenant Id, client Id,
+ * product Id, application Id and context path are answered from the digest directly, while
+ * tenant, tenant client, product rental, context instance and application are loaded the
+ * first time they are accessed, and then memoized. It's safe to share the environment
+ * between threads.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class LazyCloudEnvironment extends CloudEnvironment {
+
+    private final Lazy<Tenant> tenant;
+
+    private final Lazy<TenantClient> tenantClient;
+
+    private final Lazy<ProductRental> productRental;
+
+    private final Lazy<ContextPath> contextPath;
+
+    private final Lazy<ContextInstance> contextInstance;
+
+    private final Lazy<Application> application;
+
+    public LazyCloudEnvironment(EnvironmentDigest digest, Locale language, RentalCenter rentalCenter,
+                                ContextInstanceCenter contextInstanceCenter, ApplicationRepository applicationRepository,
+                                ContextPathParser contextPathParser) {
+        super(digest, language);
+        Assert.notNull(digest.getTenantId(), "Tenant Id of the digest cannot be null");
+        Assert.notNull(rentalCenter, "RentalCenter cannot be null");
+        Assert.notNull(contextInstanceCenter, "ContextInstanceCenter cannot be null");
+        Assert.notNull(applicationRepository, "ApplicationRepository cannot be null");
+        Assert.notNull(contextPathParser, "ContextPathParser cannot be null");
+
+        this.tenant = new Lazy<>(() -> {
+            Tenant ret = rentalCenter.getTenant(digest.getTenantId());
+            if (ret == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.INVALID_ENV_DIGEST, digest);
+            }
+            return ret;
+        });
+        this.tenantClient = new Lazy<>(() -> {
+            TenantClient ret = rentalCenter.getTenantClient(digest.getTenantId(), digest.getClientId());
+            if (ret == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, digest.getTenantId(), digest.getClientId());
+            }
+            return ret;
+        });
+        this.productRental = new Lazy<>(() -> {
+            ProductRental ret = rentalCenter.getProductRendtal(digest.getTenantId(), getProductId());
+            if (ret == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_PRODUCT_RENTAL, digest.getTenantId(), getProductId());
+            }
+            return ret;
+        });
+        this.contextPath = new Lazy<>(() -> {
+            try {
+                return contextPathParser.parse(digest.getContextPath());
+            } catch (InvalidContextPathException e) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.MALFORMED_CONTEXT_PATH, e, digest.getContextPath(), e.getPosition());
+            }
+        });
+        this.contextInstance = new Lazy<>(() -> {
+            ContextInstance ret = contextInstanceCenter.getContextInstance(getContextPath());
+            if (ret == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_CONTEXT_INSTANCE, getContextPath());
+            }
+            return ret;
+        });
+        this.application = new Lazy<>(() -> {
+            Application ret = applicationRepository.getApplication(digest.getApplicationId());
+            if (ret == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.UNKNOWN_APPLICATION_ID, digest.getApplicationId());
+            }
+            return ret;
+        });
+    }
+
+    @Override
+    public Tenant getTenant() {
+        return tenant.get();
+    }
+
+    @Override
+    public ProductRental getProductRental() {
+        return productRental.get();
+    }
+
+    @Override
+    public TenantClient getTenantClient() {
+        return tenantClient.get();
+    }
+
+    @Override
+    public ContextInstance getContextInstance() {
+        return contextInstance.get();
+    }
+
+    @Override
+    public ContextPath getContextPath() {
+        return contextPath.get();
+    }
+
+    @Override
+    public Application getApplication() {
+        return application.get();
+    }
+
+    @Override
+    public Long getTenantId() {
+        return getDigest().getTenantId();
+    }
+
+    @Override
+    public String getClientId() {
+        return getDigest().getClientId();
+    }
+
+    @Override
+    public String getProductId() {
+        String productId = getDigest().getProductId();
+        return productId != null ? productId : getClient().getProduct().getId();
+    }
+
+    @Override
+    public String getApplicationId() {
+        return getDigest().getApplicationId();
+    }
+
+    /**
+     * Print Ids of the digest only, nothing is loaded
+     */
+    @Override
+    public String toString() {
+        EnvironmentDigest digest = getDigest();
+        StringBuilder sb = new StringBuilder();
+        sb.append("CloudEnvironment{");
+        sb.append("Tenant[").append(digest.getTenantId()).append("],");
+        sb.append("TenantClient[").append(digest.getClientId()).append("],");
+        sb.append("Product[").append(digest.getProductId()).append("],");
+        sb.append("ContextInstance[").append(digest.getContextPath()).append("],");
+        sb.append("Application[").append(digest.getApplicationId()).append("],");
+        sb.append("Language[").append(LocaleUtil.getLocale(getLanguage())).append("]");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * Memoizes the value loaded by the loader, the loader is called at most once
+     * successfully, a failed loading will be retried on next access.
+     */
+    private static final class Lazy<T> {
+        private Supplier<T> loader;
+
+        private volatile T value;
+
+        Lazy(Supplier<T> loader) {
+            this.loader = loader;
+        }
+
+        T get() {
+            T ret = value;
+            if (ret == null) {
+                synchronized (this) {
+                    ret = value;
+                    if (ret == null) {
+                        ret = loader.get();
+                        if (ret != null) {
+                            value = ret;
+                            // Release the loader and what it captured
+                            loader = null;
+                        }
+                    }
+                }
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock;
+
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.function.Function;
+
+/**
+ * @Description Reactive counterpart of {@link CloudEnvironmentHolder}, which keeps the
+ * <code>CloudEnvironment</code> in Reactor's subscriber context instead of a thread local,
+ * since a reactive request hops between event loop threads.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ReactiveCloudEnvironmentHolder {
+
+    private static final Class<?> ENVIRONMENT_KEY = CloudEnvironment.class;
+
+    /**
+     * Obtain the current <code>CloudEnvironment</code>.
+     *
+     * @return the environment, or empty if no environment is attached to the subscriber context
+     */
+    public static Mono<CloudEnvironment> getEnvironment() {
+        return Mono.subscriberContext()
+                .filter(ctx -> ctx.hasKey(ENVIRONMENT_KEY))
+                .map(ctx -> ctx.<CloudEnvironment>get(ENVIRONMENT_KEY));
+    }
+
+    /**
+     * Creates a subscriber context holding the <code>CloudEnvironment</code>, say,
+     * <code>chain.filter(exchange).subscriberContext(withEnvironment(env))</code>.
+     *
+     * @param environment the environment (may not be <code>null</code>)
+     * @return subscriber context
+     */
+    public static Context withEnvironment(CloudEnvironment environment) {
+        Assert.notNull(environment, "CloudEnvironment cannot be null");
+
+        return Context.of(ENVIRONMENT_KEY, environment);
+    }
+
+    /**
+     * Clears the environment from the subscriber context.
+     *
+     * @return function to clear the environment
+     */
+    public static Function<Context, Context> clearEnvironment() {
+        return ctx -> ctx.delete(ENVIRONMENT_KEY);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock;
+
+/**
+ * @Description An {@link InvalidRequestException} without stack trace, thrown for the expected
+ * client-side failures of environment resolution, say, unknown host or application Id, whose
+ * stack traces tell nothing but cost much CPU under a flood of bad requests.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class StacklessInvalidRequestException extends InvalidRequestException {
+
+    public StacklessInvalidRequestException(int errorCode) {
+        super(errorCode);
+    }
+
+    public StacklessInvalidRequestException(int errorCode, Object... formatArgs) {
+        super(errorCode, formatArgs);
+    }
+
+    public StacklessInvalidRequestException(int errorCode, Throwable cause, Object... messageFormatArgs) {
+        super(errorCode, cause, messageFormatArgs);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
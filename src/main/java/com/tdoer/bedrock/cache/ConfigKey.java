@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.cache;
+
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextPathKey;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * @Description Composite cache key of configuration lookups, say, (contextPath, productId,
+ * clientId, tenantId) of {@link com.tdoer.bedrock.context.ContextConfigCenter}. Components are
+ * packed in order into one tagged <code>long[]</code> without boxing: numbers as they are, and a
+ * mark where a null or a string is, string components are referenced as they are in a side array.
+ * The hash code is computed once.
+ * <p>
+ * Keys are built by {@link Builder}, keys of one cache should be built of the same components
+ * in the same order. Lookups on hot paths may use the {@link #probe() probe} of the thread
+ * instead, it's reused, so nothing is allocated.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public final class ConfigKey implements Serializable {
+
+    private static final long[] NO_LONGS = new long[0];
+
+    private static final String[] NO_STRINGS = new String[0];
+
+    /*
+     * Marks in the long array, a number equal to a mark is kept from being taken as the mark
+     * by escaping the number with LONG_MARK.
+     */
+    private static final long NULL_MARK = Long.MIN_VALUE;
+
+    private static final long LONG_MARK = Long.MIN_VALUE + 1;
+
+    private static final long STRING_MARK = Long.MIN_VALUE + 2;
+
+    private static final ThreadLocal<Builder> PROBES = ThreadLocal.withInitial(Builder::new);
+
+    private long[] longs;
+
+    private int longCount;
+
+    private String[] strings;
+
+    private int stringCount;
+
+    private int hash;
+
+    private ConfigKey() {
+    }
+
+    private ConfigKey(long[] longs, String[] strings) {
+        set(longs, longs.length, strings, strings.length);
+    }
+
+    /**
+     * Key of lookups by (contextPath, productId, clientId, tenantId)
+     */
+    public static ConfigKey of(ContextPath contextPath, String productId, String clientId, Long tenantId) {
+        return builder().add(contextPath).add(productId).add(clientId).add(tenantId).build();
+    }
+
+    /**
+     * Key of lookups by (productId, clientId, tenantId)
+     */
+    public static ConfigKey of(String productId, String clientId, Long tenantId) {
+        return builder().add(productId).add(clientId).add(tenantId).build();
+    }
+
+    /**
+     * Key of lookups by (id, contextPath, productId, clientId, tenantId), the id is an
+     * application Id, for example.
+     */
+    public static ConfigKey of(String id, ContextPath contextPath, String productId, String clientId, Long tenantId) {
+        return builder().add(id).add(contextPath).add(productId).add(clientId).add(tenantId).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the emptied builder of the thread to look up a cache by {@link Builder#probeKey()}.
+     * The builder is shared by all lookups of the thread, so build the key to put before calling
+     * anything that may look up a cache again.
+     *
+     * @return Builder of the thread
+     */
+    public static Builder probe() {
+        return PROBES.get().reset();
+    }
+
+    /**
+     * Check if the key starts with the components of the prefix, say, key of (userId,
+     * contextPath) starts with key of (userId)
+     *
+     * @param prefix Key of the leading components
+     * @return true if the key starts with the prefix
+     */
+    public boolean startsWith(ConfigKey prefix) {
+        if (prefix.longCount > longCount || prefix.stringCount > stringCount) {
+            return false;
+        }
+        for (int i = 0; i < prefix.longCount; i++) {
+            if (longs[i] != prefix.longs[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < prefix.stringCount; i++) {
+            if (!Objects.equals(strings[i], prefix.strings[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConfigKey)) {
+            return false;
+        }
+        ConfigKey rhs = (ConfigKey) obj;
+        return hash == rhs.hash && longCount == rhs.longCount && stringCount == rhs.stringCount && startsWith(rhs);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey" + Arrays.toString(Arrays.copyOf(longs, longCount))
+                + Arrays.toString(Arrays.copyOf(strings, stringCount));
+    }
+
+    private ConfigKey set(long[] longs, int longCount, String[] strings, int stringCount) {
+        this.longs = longs;
+        this.longCount = longCount;
+        this.strings = strings;
+        this.stringCount = stringCount;
+        // Same as Arrays.hashCode() of the trimmed arrays
+        int longHash = 1;
+        for (int i = 0; i < longCount; i++) {
+            longHash = 31 * longHash + Long.hashCode(longs[i]);
+        }
+        int stringHash = 1;
+        for (int i = 0; i < stringCount; i++) {
+            stringHash = 31 * stringHash + Objects.hashCode(strings[i]);
+        }
+        this.hash = 31 * longHash + stringHash;
+        return this;
+    }
+
+    public static final class Builder {
+
+        private long[] longs = new long[8];
+
+        private int longCount;
+
+        private String[] strings = new String[4];
+
+        private int stringCount;
+
+        private ConfigKey probeKey;
+
+        private Builder() {
+        }
+
+        public Builder add(Long value) {
+            if (value == null) {
+                return addLong(NULL_MARK);
+            }
+            return add(value.longValue());
+        }
+
+        public Builder add(long value) {
+            // A value equal to a mark is escaped by a preceding mark
+            if (value <= STRING_MARK) {
+                addLong(LONG_MARK);
+            }
+            return addLong(value);
+        }
+
+        public Builder add(String value) {
+            if (value == null) {
+                return addLong(NULL_MARK);
+            }
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount << 1);
+            }
+            strings[stringCount++] = value;
+            return addLong(STRING_MARK);
+        }
+
+        /**
+         * Add the context path as its depth followed by (type, instanceId) pairs, packed by
+         * {@link ContextPathKey}
+         */
+        public Builder add(ContextPath contextPath) {
+            if (contextPath == null) {
+                return addLong(NULL_MARK);
+            }
+            int depth = ContextPathKey.depthOf(contextPath);
+            ensureLongs(1 + (depth << 1));
+            longs[longCount++] = depth;
+            longCount = ContextPathKey.pack(contextPath, longs, longCount);
+            return this;
+        }
+
+        /**
+         * Add the packed context path, the same as adding the context path itself
+         */
+        public Builder add(ContextPathKey contextPathKey) {
+            if (contextPathKey == null) {
+                return addLong(NULL_MARK);
+            }
+            int depth = contextPathKey.getDepth();
+            ensureLongs(1 + (depth << 1));
+            longs[longCount++] = depth;
+            longCount = contextPathKey.copyTo(longs, longCount);
+            return this;
+        }
+
+        public ConfigKey build() {
+            return new ConfigKey(longCount == 0 ? NO_LONGS : Arrays.copyOf(longs, longCount),
+                    stringCount == 0 ? NO_STRINGS : Arrays.copyOf(strings, stringCount));
+        }
+
+        /**
+         * Get the key of added components without copying them, it's equal to the built key,
+         * but it's reused by the builder, so use it to look up only, never put it into a cache.
+         *
+         * @return Key backed by the builder
+         */
+        public ConfigKey probeKey() {
+            if (probeKey == null) {
+                probeKey = new ConfigKey();
+            }
+            return probeKey.set(longs, longCount, strings, stringCount);
+        }
+
+        private Builder reset() {
+            longCount = 0;
+            Arrays.fill(strings, 0, stringCount, null);
+            stringCount = 0;
+            return this;
+        }
+
+        private Builder addLong(long value) {
+            ensureLongs(1);
+            longs[longCount++] = value;
+            return this;
+        }
+
+        private void ensureLongs(int extra) {
+            if (longCount + extra > longs.length) {
+                longs = Arrays.copyOf(longs, Math.max(longs.length << 1, longCount + extra));
+            }
+        }
+    }
+}
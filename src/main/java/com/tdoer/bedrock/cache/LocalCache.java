@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.cache;
+
+import org.springframework.util.Assert;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * @Description A bounded, concurrent, in-process cache. Entries expire a fixed time after
+ * they were written, and the oldest written entries are evicted first once the cache grows
+ * beyond its maximum size.
+ * <p>
+ * Reads never lock; writes only touch the hash bin of the key and an insertion-order queue.
+ * {@code null} values are never cached.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class LocalCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<K, V>> map;
+
+    private final ConcurrentLinkedQueue<Entry<K, V>> writeOrder;
+
+    private final AtomicInteger writeOrderSize;
+
+    private final int maximumSize;
+
+    private final long ttlNanos;
+
+    /**
+     * @param maximumSize Maximum number of entries
+     * @param ttl         Time to live of an entry after it's written, non-positive value means never expire
+     * @param unit        Time unit of the ttl
+     */
+    public LocalCache(int maximumSize, long ttl, TimeUnit unit) {
+        Assert.isTrue(maximumSize > 0, "Maximum size must be greater than 0");
+        Assert.notNull(unit, "TimeUnit cannot be null");
+
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl > 0 ? unit.toNanos(ttl) : 0L;
+        this.map = new ConcurrentHashMap<>(Math.min(maximumSize, 1024));
+        this.writeOrder = new ConcurrentLinkedQueue<>();
+        this.writeOrderSize = new AtomicInteger();
+    }
+
+    /**
+     * Get the cached value of the key
+     *
+     * @param key
+     * @return The value, or {@code null} if absent or expired
+     */
+    public V get(K key) {
+        Entry<K, V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(ttlNanos)) {
+            map.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Get the cached value of the key, load and cache it by the loader if absent.
+     * The loader is called out of any lock, concurrent misses on the same key may
+     * load the value more than once.
+     *
+     * @param key
+     * @param loader Loader to load the value, it may return {@code null}
+     * @return The value, or {@code null} if the loader returns {@code null}
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Assert.notNull(key, "Key cannot be null");
+        Assert.notNull(value, "Value cannot be null");
+
+        Entry<K, V> entry = new Entry<>(key, value);
+        map.put(key, entry);
+        writeOrder.offer(entry);
+        if (writeOrderSize.incrementAndGet() > maximumSize) {
+            evict();
+        }
+    }
+
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * Invalidate all entries matching the predicate, for example, all environments of a tenant.
+     *
+     * @param predicate
+     */
+    public void invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        Iterator<Map.Entry<K, Entry<K, V>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<K, V>> e = it.next();
+            if (predicate.test(e.getKey(), e.getValue().value)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        // Drain the queue before clearing the map, so an entry put meanwhile is either
+        // still queued or removed from the map, and the queue holds no stale values.
+        while (writeOrder.poll() != null) {
+            writeOrderSize.decrementAndGet();
+        }
+        map.clear();
+    }
+
+    /**
+     * Approximate number of entries, including expired ones not cleaned up yet
+     *
+     * @return
+     */
+    public int size() {
+        return map.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    protected void evict() {
+        // The queue holds entries in write order, including the ones which have been
+        // overwritten or invalidated already, those are simply dropped.
+        while (writeOrderSize.get() > maximumSize) {
+            Entry<K, V> eldest = writeOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            writeOrderSize.decrementAndGet();
+            map.remove(eldest.key, eldest);
+        }
+    }
+
+    private static final class Entry<K, V> {
+        final K key;
+
+        final V value;
+
+        final long writeTime;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = System.nanoTime();
+        }
+
+        boolean isExpired(long ttlNanos) {
+            return ttlNanos > 0 && System.nanoTime() - writeTime >= ttlNanos;
+        }
+    }
+}
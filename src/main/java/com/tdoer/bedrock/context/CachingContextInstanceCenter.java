@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.cache.LocalCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description A {@link ContextInstanceCenter} which caches context instances loaded from the
+ * backend center. Batch lookups are served from the cache as far as possible, and the missed
+ * paths are loaded by one batched call of the backend center. Ancestors are resolved level by
+ * level through the cache the same way.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class CachingContextInstanceCenter implements ContextInstanceCenter {
+
+    private final static Logger logger = LoggerFactory.getLogger(CachingContextInstanceCenter.class);
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private final ContextInstanceCenter delegate;
+
+    private final LocalCache<ContextPath, ContextInstance> cache;
+
+    public CachingContextInstanceCenter(ContextInstanceCenter delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public CachingContextInstanceCenter(ContextInstanceCenter delegate, int maximumSize, long ttl, TimeUnit unit) {
+        Assert.notNull(delegate, "ContextInstanceCenter cannot be null");
+
+        this.delegate = delegate;
+        this.cache = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    @Override
+    public ContextInstance getContextInstance(ContextPath contextPath) {
+        return cache.get(contextPath, delegate::getContextInstance);
+    }
+
+    @Override
+    public Map<ContextPath, ContextInstance> getContextInstances(Collection<ContextPath> contextPaths) {
+        Assert.notNull(contextPaths, "Context paths cannot be null");
+
+        Map<ContextPath, ContextInstance> ret = new HashMap<>(Math.max(16, contextPaths.size() * 4 / 3 + 1));
+        Set<ContextPath> missed = null;
+        for (ContextPath contextPath : contextPaths) {
+            if (contextPath == null || ret.containsKey(contextPath)) {
+                continue;
+            }
+            ContextInstance instance = cache.get(contextPath);
+            if (instance != null) {
+                ret.put(contextPath, instance);
+            } else {
+                if (missed == null) {
+                    missed = new LinkedHashSet<>();
+                }
+                missed.add(contextPath);
+            }
+        }
+
+        if (missed != null) {
+            Map<ContextPath, ContextInstance> loaded = delegate.getContextInstances(missed);
+            logger.debug("Loaded {} of {} missed context instances", loaded.size(), missed.size());
+            for (Map.Entry<ContextPath, ContextInstance> entry : loaded.entrySet()) {
+                if (entry.getValue() != null) {
+                    cache.put(entry.getKey(), entry.getValue());
+                    ret.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void listAncestors(ContextPath contextPath, List<ContextInstance> list) {
+        int size = list.size();
+        for (ContextPath p = contextPath.getParentPath(); p != null; p = p.getParentPath()) {
+            ContextInstance instance = cache.get(p);
+            if (instance == null) {
+                // Take the missed ancestors in one batch
+                list.subList(size, list.size()).clear();
+                List<ContextPath> paths = new ArrayList<>();
+                for (ContextPath q = contextPath.getParentPath(); q != null; q = q.getParentPath()) {
+                    paths.add(q);
+                }
+                Map<ContextPath, ContextInstance> instances = getContextInstances(paths);
+                for (ContextPath q : paths) {
+                    ContextInstance ancestor = instances.get(q);
+                    if (ancestor != null) {
+                        list.add(ancestor);
+                    }
+                }
+                return;
+            }
+            list.add(instance);
+        }
+    }
+
+    public void invalidate(ContextPath contextPath) {
+        cache.invalidate(contextPath);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public ContextInstanceCenter getDelegate() {
+        return delegate;
+    }
+}
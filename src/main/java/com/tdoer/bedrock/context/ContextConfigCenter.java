@@ -17,7 +17,12 @@ package com.tdoer.bedrock.context;
 
 import com.tdoer.bedrock.application.ApplicationInstallation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
 /**
  * @Description
  * @author Htinker Hu (htinker@163.com)
@@ -27,6 +32,43 @@ public interface ContextConfigCenter {
 
     void listUserRoles(ContextPath contextPath, Long userId, List<ContextRole> list);
 
+    /**
+     * List roles of the users in the context instance in batch. Each requested user is present
+     * in the returned map, with an empty list if the user has no role, and a role held by many
+     * users is shared by their lists.
+     * <p>
+     * The default implementation lists roles user by user, centers backed by remote storage
+     * should override it with one batched query.
+     * </p>
+     *
+     * @param contextPath Context path
+     * @param userIds     User Ids, duplicated Ids are resolved once
+     * @return Map of user Id to the user's roles, never {@code null}
+     */
+    default Map<Long, List<ContextRole>> listUserRoles(ContextPath contextPath, long[] userIds) {
+        Map<Long, List<ContextRole>> ret = new HashMap<>(Math.max(16, userIds.length * 4 / 3 + 1));
+        Map<Long, ContextRole> shared = new HashMap<>();
+        List<ContextRole> buffer = new ArrayList<>();
+        for (long userId : userIds) {
+            if (ret.containsKey(userId)) {
+                continue;
+            }
+            listUserRoles(contextPath, userId, buffer);
+            if (buffer.isEmpty()) {
+                ret.put(userId, Collections.emptyList());
+                continue;
+            }
+            List<ContextRole> roles = new ArrayList<>(buffer.size());
+            for (ContextRole role : buffer) {
+                ContextRole existing = role.getId() == null ? null : shared.putIfAbsent(role.getId(), role);
+                roles.add(existing != null ? existing : role);
+            }
+            ret.put(userId, roles);
+            buffer.clear();
+        }
+        return ret;
+    }
+
     void listPublicAuthorities(ContextPath contextPath, String productId, String clientId, Long tenantId, List<PublicAuthority> list);
 
     void listContextRoles(ContextPath contextPath, String productId, String clientId, Long tenantId, List<ContextRole> list);
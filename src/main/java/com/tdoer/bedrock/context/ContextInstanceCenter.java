@@ -14,6 +14,12 @@
  * limitations under the License.
  */
 package com.tdoer.bedrock.context;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @Description
  * @author Htinker Hu (htinker@163.com)
@@ -21,4 +27,43 @@ package com.tdoer.bedrock.context;
  */
 public interface ContextInstanceCenter {
     ContextInstance getContextInstance(ContextPath contextPath);
+
+    /**
+     * Get context instances of the context paths in batch. Duplicated paths are looked up once,
+     * and paths of no context instance are absent from the returned map.
+     * <p>
+     * The default implementation looks up the paths one by one, centers backed by remote
+     * storage should override it with a batched call.
+     * </p>
+     *
+     * @param contextPaths Context paths
+     * @return Map of context path to the context instance, never {@code null}
+     */
+    default Map<ContextPath, ContextInstance> getContextInstances(Collection<ContextPath> contextPaths) {
+        Map<ContextPath, ContextInstance> ret = new HashMap<>(Math.max(16, contextPaths.size() * 4 / 3 + 1));
+        for (ContextPath contextPath : contextPaths) {
+            if (contextPath != null && !ret.containsKey(contextPath)) {
+                ContextInstance instance = getContextInstance(contextPath);
+                if (instance != null) {
+                    ret.put(contextPath, instance);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * List ancestors of the context instance, from its parent up to the top
+     *
+     * @param contextPath Context path of the instance
+     * @param list        List to add ancestors into
+     */
+    default void listAncestors(ContextPath contextPath, List<ContextInstance> list) {
+        for (ContextPath p = contextPath.getParentPath(); p != null; p = p.getParentPath()) {
+            ContextInstance instance = getContextInstance(p);
+            if (instance != null) {
+                list.add(instance);
+            }
+        }
+    }
 }
@@ -16,18 +16,54 @@
 package com.tdoer.bedrock.context;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * @Description
+ * @Description Immutable path of a context instance, say, "22.1-23.1". Absolute value and hash
+ * code are computed once on construction. Use {@link #of(Integer, Long, ContextPath)} to obtain
+ * the canonical instance of a path, canonical instances are compared by identity and are
+ * reclaimed once no longer referenced.
+ * <p>
+ * Interning never locks: a canonical instance answers {@link #intern()} by itself, others are
+ * looked up in a concurrent table of weak references, which is purged of reclaimed paths on
+ * insertion. {@link #of(Integer, Long, ContextPath)} looks up by hash of the absolute value,
+ * computed from the fields, and allocates a path only if it wasn't interned yet.
+ * </p>
  * @author Htinker Hu (htinker@163.com)
  * @create 2017-09-19
  */
 public final class ContextPath implements Serializable {
 
-    private Integer type;
+    /**
+     * Kept as the mutable class computed, serialized fields are unchanged, so paths serialized by
+     * it are still read, and interned by {@link #readResolve()}
+     */
+    private static final long serialVersionUID = -7370165861252563421L;
+
+    private static final ConcurrentHashMap<Object, WeakKey> INTERNED = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<ContextPath> RECLAIMED = new ReferenceQueue<>();
+
+    private static final String NULL = "null";
 
-    private Long instanceId;
+    private final Integer type;
 
-    private ContextPath parent;
+    private final Long instanceId;
+
+    private final ContextPath parent;
+
+    private final transient String absoluteValue;
+
+    private final transient int hash;
+
+    /**
+     * Whether it's the canonical instance of the path
+     */
+    private transient volatile boolean canonical;
 
     public ContextPath(Integer type, Long instanceId) {
         this(type, instanceId, null);
@@ -37,25 +73,126 @@ public final class ContextPath implements Serializable {
         this.type = type;
         this.instanceId = instanceId;
         this.parent = parent;
+        this.absoluteValue = parent != null ? parent.absoluteValue + "-" + getValue() : getValue();
+        this.hash = absoluteValue.hashCode();
     }
 
-    public String getValue() {
-        return type + "." + instanceId;
+    /**
+     * Get the canonical instance of the context path
+     *
+     * @param type       Context type
+     * @param instanceId Context instance Id
+     * @return Canonical context path
+     */
+    public static ContextPath of(Integer type, Long instanceId) {
+        return of(type, instanceId, null);
     }
 
-    public String getAbsoluteValue() {
-        StringBuilder buffer = new StringBuilder();
-        if (parent != null) {
-            buffer.append(parent.getAbsoluteValue());
-            buffer.append("-");
+    /**
+     * Get the canonical instance of the context path
+     *
+     * @param type       Context type
+     * @param instanceId Context instance Id
+     * @param parent     Parent path, can be {@code null}
+     * @return Canonical context path
+     */
+    public static ContextPath of(Integer type, Long instanceId, ContextPath parent) {
+        ContextPath canonicalParent = parent != null ? parent.intern() : null;
+        ContextPath ret = lookup(type, instanceId, canonicalParent, hash(canonicalParent, type, instanceId));
+        return ret != null ? ret : insert(new ContextPath(type, instanceId, canonicalParent));
+    }
+
+    /**
+     * Get the canonical instance of the context path, it's the context path itself if it
+     * was not interned yet.
+     *
+     * @return Canonical context path
+     */
+    public ContextPath intern() {
+        if (canonical) {
+            return this;
+        }
+        ContextPath ret = lookup(type, instanceId, parent, hash);
+        if (ret != null) {
+            return ret;
         }
-        buffer.append(getValue());
+        ContextPath canonicalParent = parent != null ? parent.intern() : null;
+        return insert(canonicalParent == parent ? this : new ContextPath(type, instanceId, canonicalParent));
+    }
 
-        return buffer.toString();
+    private static ContextPath lookup(Integer type, Long instanceId, ContextPath parent, int hash) {
+        WeakKey key = INTERNED.get(new LookupKey(type, instanceId, parent, hash));
+        return key != null ? key.get() : null;
     }
 
-    public void setParentPath(ContextPath parent) {
-        this.parent = parent;
+    /**
+     * Make the path, whose parent is canonical, the canonical instance unless another one won
+     */
+    private static ContextPath insert(ContextPath path) {
+        purge();
+        WeakKey key = new WeakKey(path, RECLAIMED);
+        while (true) {
+            WeakKey existing = INTERNED.putIfAbsent(key, key);
+            if (existing == null) {
+                path.canonical = true;
+                return path;
+            }
+            ContextPath ret = existing.get();
+            if (ret != null) {
+                return ret;
+            }
+            // Reclaimed but not purged yet
+            INTERNED.remove(existing, existing);
+        }
+    }
+
+    private static void purge() {
+        Reference<? extends ContextPath> ref;
+        while ((ref = RECLAIMED.poll()) != null) {
+            INTERNED.remove(ref, ref);
+        }
+    }
+
+    /**
+     * Hash code of the absolute value, computed from the fields without building the value
+     */
+    static int hash(ContextPath parent, Integer type, Long instanceId) {
+        int h = parent != null ? 31 * parent.hash + '-' : 0;
+        h = hash(h, type == null ? null : type.longValue());
+        h = 31 * h + '.';
+        return hash(h, instanceId);
+    }
+
+    private static int hash(int h, Long value) {
+        if (value == null) {
+            for (int i = 0; i < NULL.length(); i++) {
+                h = 31 * h + NULL.charAt(i);
+            }
+            return h;
+        }
+        // Work on the negative value, as Long.MIN_VALUE has no positive counterpart
+        long n = value;
+        if (n < 0) {
+            h = 31 * h + '-';
+        } else {
+            n = -n;
+        }
+        long p = 1;
+        while (n / p <= -10) {
+            p *= 10;
+        }
+        for (; p > 0; p /= 10) {
+            h = 31 * h + ('0' - (int) ((n / p) % 10));
+        }
+        return h;
+    }
+
+    public String getValue() {
+        return type + "." + instanceId;
+    }
+
+    public String getAbsoluteValue() {
+        return absoluteValue;
     }
 
     public ContextPath getParentPath() {
@@ -82,12 +219,15 @@ public final class ContextPath implements Serializable {
         return parent;
     }
 
+    /**
+     * Context path is immutable, there's no need to copy it.
+     *
+     * @return The canonical instance of the context path
+     * @deprecated use the context path itself, or {@link #intern()}
+     */
+    @Deprecated
     public ContextPath clone() {
-        if (parent != null) {
-            return new ContextPath(type, instanceId, parent.clone());
-        } else {
-            return new ContextPath(type, instanceId);
-        }
+        return intern();
     }
 
     /**
@@ -104,10 +244,10 @@ public final class ContextPath implements Serializable {
      */
     public ContextPath parentTemplate() {
         if (!instanceId.equals(0L)) {
-            return new ContextPath(type, 0L, parent);
+            return of(type, 0L, parent);
         } else {
             if (parent != null) {
-                return new ContextPath(type, instanceId, parent.parentTemplate());
+                return of(type, instanceId, parent.parentTemplate());
             } else {
                 return this;
             }
@@ -116,19 +256,102 @@ public final class ContextPath implements Serializable {
 
     @Override
     public int hashCode() {
-        return getAbsoluteValue().hashCode();
+        return hash;
     }
 
     @Override
     public boolean equals(Object rhs) {
-        if (rhs instanceof ContextPath) {
-            return (this.getAbsoluteValue().equals(((ContextPath) rhs).getAbsoluteValue()));
+        if (this == rhs) {
+            return true;
+        }
+        if (!(rhs instanceof ContextPath) || hash != ((ContextPath) rhs).hash) {
+            return false;
+        }
+        ContextPath l = this;
+        ContextPath r = (ContextPath) rhs;
+        while (l != null && r != null) {
+            if (l == r) {
+                return true;
+            }
+            if (!Objects.equals(l.type, r.type) || !Objects.equals(l.instanceId, r.instanceId)) {
+                return false;
+            }
+            l = l.parent;
+            r = r.parent;
         }
-        return false;
+        return l == r;
+    }
+
+    private Object readResolve() {
+        return of(type, instanceId, parent);
     }
 
     @Override
     public String toString() {
         return getAbsoluteValue();
     }
+
+    /**
+     * Key of an interned path in the table, it's the value as well
+     */
+    private static final class WeakKey extends WeakReference<ContextPath> {
+        private final int hash;
+
+        WeakKey(ContextPath path, ReferenceQueue<ContextPath> queue) {
+            super(path, queue);
+            this.hash = path.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WeakKey)) {
+                return false;
+            }
+            ContextPath path = get();
+            return path != null && path.equals(((WeakKey) obj).get());
+        }
+    }
+
+    /**
+     * Key to look up the table by the fields of a path
+     */
+    private static final class LookupKey {
+        private final Integer type;
+
+        private final Long instanceId;
+
+        private final ContextPath parent;
+
+        private final int hash;
+
+        LookupKey(Integer type, Long instanceId, ContextPath parent, int hash) {
+            this.type = type;
+            this.instanceId = instanceId;
+            this.parent = parent;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof WeakKey)) {
+                return false;
+            }
+            ContextPath path = ((WeakKey) obj).get();
+            return path != null && path.hash == hash && Objects.equals(path.type, type)
+                    && Objects.equals(path.instanceId, instanceId) && Objects.equals(path.parent, parent);
+        }
+    }
 }
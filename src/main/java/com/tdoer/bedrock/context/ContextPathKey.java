@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.springframework.util.Assert;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * @Description Compact key of a {@link ContextPath}, the (type, instanceId) pairs from the top
+ * path down to the path itself are packed into a <code>long[]</code>, and the hash code is
+ * computed once. It's used as key of large caches and indexes, whose entries would otherwise
+ * hold the whole chain of context path objects. {@link com.tdoer.bedrock.cache.ConfigKey} packs
+ * context paths of composite keys the same way, by {@link #pack(ContextPath, long[], int)}.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public final class ContextPathKey implements Serializable {
+
+    private final long[] pairs;
+
+    private final int hash;
+
+    private ContextPathKey(long[] pairs) {
+        this.pairs = pairs;
+        this.hash = Arrays.hashCode(pairs);
+    }
+
+    public static ContextPathKey of(ContextPath contextPath) {
+        Assert.notNull(contextPath, "ContextPath cannot be null");
+
+        long[] pairs = new long[depthOf(contextPath) << 1];
+        pack(contextPath, pairs, 0);
+        return new ContextPathKey(pairs);
+    }
+
+    /**
+     * @param contextPath Context path
+     * @return Count of the paths from the top path down to the path itself
+     */
+    public static int depthOf(ContextPath contextPath) {
+        int depth = 0;
+        for (ContextPath c = contextPath; c != null; c = c.getParentPath()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Pack (type, instanceId) pairs of the context path, from the top path down, into the array
+     *
+     * @param contextPath Context path
+     * @param dest        Destination array, with room of 2 * {@link #depthOf(ContextPath)} longs
+     * @param offset      Offset to start at
+     * @return Offset next to the packed pairs
+     */
+    public static int pack(ContextPath contextPath, long[] dest, int offset) {
+        int end = offset + (depthOf(contextPath) << 1);
+        int i = end - 2;
+        for (ContextPath c = contextPath; c != null; c = c.getParentPath(), i -= 2) {
+            dest[i] = c.getType();
+            dest[i + 1] = c.getInstanceId();
+        }
+        return end;
+    }
+
+    /**
+     * Copy the packed pairs into the array
+     *
+     * @param dest   Destination array, with room of 2 * {@link #getDepth()} longs
+     * @param offset Offset to start at
+     * @return Offset next to the copied pairs
+     */
+    public int copyTo(long[] dest, int offset) {
+        System.arraycopy(pairs, 0, dest, offset, pairs.length);
+        return offset + pairs.length;
+    }
+
+    public int getDepth() {
+        return pairs.length >> 1;
+    }
+
+    public int getType(int level) {
+        return (int) pairs[level << 1];
+    }
+
+    public long getInstanceId(int level) {
+        return pairs[(level << 1) + 1];
+    }
+
+    /**
+     * Unpack the key to the interned context path
+     *
+     * @return Context path
+     */
+    public ContextPath toContextPath() {
+        ContextPath ret = null;
+        for (int i = 0; i < pairs.length; i += 2) {
+            ret = ContextPath.of((int) pairs[i], pairs[i + 1], ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ContextPathKey)) {
+            return false;
+        }
+        ContextPathKey rhs = (ContextPathKey) obj;
+        return hash == rhs.hash && Arrays.equals(pairs, rhs.pairs);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                buffer.append('-');
+            }
+            buffer.append(pairs[i]).append('.').append(pairs[i + 1]);
+        }
+        return buffer.toString();
+    }
+}
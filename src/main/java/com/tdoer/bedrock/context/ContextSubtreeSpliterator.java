@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * @Description Depth-first {@link Spliterator} over a context instance and all its descendants.
+ * Children are taken from {@link HierarchicalContextInstanceCenter#iterateChildren(ContextPath)}
+ * in batches of {@link #BATCH_SIZE} when their parent is reached, so memory is bounded by depth
+ * times the batch size rather than by fan-out or subtree size.
+ * <p>
+ * It splits on child boundaries, a split takes away half of the pending subtrees together with
+ * the same share of the size estimate, so parallel streams spread a large subtree across
+ * threads and stop splitting once the pieces are small enough.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextSubtreeSpliterator implements Spliterator<ContextInstance> {
+
+    public static final int BATCH_SIZE = 64;
+
+    private final HierarchicalContextInstanceCenter center;
+
+    /**
+     * Pending entries, the head is the next to visit
+     */
+    private final Deque<Entry> pending;
+
+    private final List<ContextInstance> batch = new ArrayList<>();
+
+    /**
+     * Estimated count of instances left
+     */
+    private long estimate;
+
+    /**
+     * Create the spliterator of unknown subtree size
+     *
+     * @param center Center to iterate children from
+     * @param root   Root of the subtree
+     */
+    public ContextSubtreeSpliterator(HierarchicalContextInstanceCenter center, ContextInstance root) {
+        this(center, root, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param center        Center to iterate children from
+     * @param root          Root of the subtree
+     * @param estimatedSize Estimated size of the subtree, or {@link Long#MAX_VALUE} if unknown
+     */
+    public ContextSubtreeSpliterator(HierarchicalContextInstanceCenter center, ContextInstance root, long estimatedSize) {
+        Assert.notNull(center, "HierarchicalContextInstanceCenter cannot be null");
+        Assert.notNull(root, "Root ContextInstance cannot be null");
+
+        this.center = center;
+        this.pending = new ArrayDeque<>();
+        this.pending.push(Entry.subtree(root));
+        this.estimate = Math.max(1L, estimatedSize);
+    }
+
+    private ContextSubtreeSpliterator(HierarchicalContextInstanceCenter center, Deque<Entry> pending, long estimate) {
+        this.center = center;
+        this.pending = pending;
+        this.estimate = estimate;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ContextInstance> action) {
+        Entry entry;
+        while ((entry = pending.poll()) != null && entry.children != null) {
+            fill(entry);
+        }
+        if (entry == null) {
+            estimate = 0;
+            return false;
+        }
+        if (entry.expand) {
+            Iterator<ContextInstance> children = center.iterateChildren(entry.instance.getContextPath());
+            if (children.hasNext()) {
+                pending.push(Entry.children(children));
+            }
+        }
+        if (estimate > 1 && estimate != Long.MAX_VALUE) {
+            estimate--;
+        }
+        action.accept(entry.instance);
+        return true;
+    }
+
+    /**
+     * Take the next batch of children from the cursor to the head of pending entries, the
+     * cursor follows the batch if there are more children.
+     */
+    private void fill(Entry cursor) {
+        while (batch.size() < BATCH_SIZE && cursor.children.hasNext()) {
+            batch.add(cursor.children.next());
+        }
+        if (cursor.children.hasNext()) {
+            pending.push(cursor);
+        }
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            pending.push(Entry.subtree(batch.get(i)));
+        }
+        batch.clear();
+    }
+
+    @Override
+    public Spliterator<ContextInstance> trySplit() {
+        Entry head = pending.peek();
+        if (head == null || estimate <= 1) {
+            return null;
+        }
+        if (pending.size() == 1) {
+            if (head.children != null) {
+                // Take a batch of children to split
+                pending.poll();
+                fill(head);
+            } else if (head.expand) {
+                // Split the subtree root from its children
+                pending.poll();
+                Iterator<ContextInstance> children = center.iterateChildren(head.instance.getContextPath());
+                if (!children.hasNext()) {
+                    pending.push(Entry.instance(head.instance));
+                    return null;
+                }
+                pending.push(Entry.children(children));
+                Deque<Entry> split = new ArrayDeque<>(1);
+                split.push(Entry.instance(head.instance));
+                if (estimate != Long.MAX_VALUE) {
+                    estimate--;
+                }
+                return new ContextSubtreeSpliterator(center, split, 1);
+            }
+        }
+        int size = pending.size();
+        if (size < 2) {
+            return null;
+        }
+
+        // Hand over the first half of the pending subtrees with its share of the estimate
+        int count = size / 2;
+        Deque<Entry> split = new ArrayDeque<>(count);
+        for (int i = 0; i < count; i++) {
+            split.addLast(pending.pollFirst());
+        }
+        long splitEstimate = estimate / size * count + estimate % size * count / size;
+        estimate -= splitEstimate;
+        return new ContextSubtreeSpliterator(center, split, Math.max(1L, splitEstimate));
+    }
+
+    @Override
+    public long estimateSize() {
+        return pending.isEmpty() ? 0 : estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+
+    private static final class Entry {
+        final ContextInstance instance;
+
+        /**
+         * Whether its descendants are to be visited, or only the instance itself
+         */
+        final boolean expand;
+
+        /**
+         * Cursor of children not taken yet, {@code null} if it's an instance entry
+         */
+        final Iterator<ContextInstance> children;
+
+        private Entry(ContextInstance instance, boolean expand, Iterator<ContextInstance> children) {
+            this.instance = instance;
+            this.expand = expand;
+            this.children = children;
+        }
+
+        static Entry subtree(ContextInstance instance) {
+            return new Entry(instance, true, null);
+        }
+
+        static Entry instance(ContextInstance instance) {
+            return new Entry(instance, false, null);
+        }
+
+        static Entry children(Iterator<ContextInstance> children) {
+            return new Entry(null, false, children);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @Description {@link RootContextType} backed by an immutable, flattened snapshot of the context
+ * type tree. Types are kept in a dense array indexed by type number, codes in an open-addressing
+ * table, and parent, root and depth of each type are precomputed from the tree's child links,
+ * {@link ContextType#getParent()} is not consulted.
+ * <p>
+ * The snapshot is rebuilt and published atomically by {@link #publish(ContextType)} when the
+ * type tree changes, lookups take constant time and never lock.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextTypeRegistry implements RootContextType {
+
+    private final static Logger logger = LoggerFactory.getLogger(ContextTypeRegistry.class);
+
+    /**
+     * Maximal span between the smallest and the largest type number
+     */
+    public static final int MAX_TYPE_SPAN = 1 << 16;
+
+    private volatile Snapshot snapshot;
+
+    public ContextTypeRegistry(ContextType root) {
+        publish(root);
+    }
+
+    /**
+     * Rebuild the registry from the type tree and publish it
+     *
+     * @param root Root context type
+     */
+    public void publish(ContextType root) {
+        Assert.notNull(root, "Root ContextType cannot be null");
+
+        Snapshot s = new Snapshot(root);
+        this.snapshot = s;
+        logger.info("Published {} context types", s.types.length);
+    }
+
+    @Override
+    public ContextType getRoot() {
+        return snapshot.root;
+    }
+
+    @Override
+    public ContextType find(Integer type) {
+        if (type == null) {
+            return null;
+        }
+        Snapshot s = snapshot;
+        int index = s.indexOf(type);
+        return index < 0 ? null : s.types[index];
+    }
+
+    @Override
+    public ContextType find(String code) {
+        if (code == null) {
+            return null;
+        }
+        Snapshot s = snapshot;
+        int index = s.indexOf(code);
+        return index < 0 ? null : s.types[index];
+    }
+
+    /**
+     * Get the parent type of the type
+     *
+     * @param type Type number
+     * @return Parent type, or {@code null} if the type is root or unknown
+     */
+    public ContextType getParent(Integer type) {
+        Snapshot s = snapshot;
+        int index = type == null ? -1 : s.indexOf(type);
+        if (index < 0 || s.parents[index] < 0) {
+            return null;
+        }
+        return s.types[s.parents[index]];
+    }
+
+    /**
+     * Get depth of the type, the depth of root is 0
+     *
+     * @param type Type number
+     * @return Depth of the type, or -1 if unknown
+     */
+    public int getDepth(Integer type) {
+        Snapshot s = snapshot;
+        int index = type == null ? -1 : s.indexOf(type);
+        return index < 0 ? -1 : s.depths[index];
+    }
+
+    /**
+     * Check if a type is the ancestor of another type
+     *
+     * @param ancestor Type number of the ancestor
+     * @param type     Type number of the descendant
+     * @return true if the ancestor is the type's ancestor
+     */
+    public boolean isAncestor(Integer ancestor, Integer type) {
+        if (ancestor == null || type == null) {
+            return false;
+        }
+        Snapshot s = snapshot;
+        int a = s.indexOf(ancestor);
+        int i = s.indexOf(type);
+        if (a < 0 || i < 0) {
+            return false;
+        }
+        for (i = s.parents[i]; i >= 0 && s.depths[i] >= s.depths[a]; i = s.parents[i]) {
+            if (i == a) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Snapshot {
+        final ContextType root;
+
+        /**
+         * Types by dense index, that's, type number minus the smallest type number
+         */
+        final ContextType[] types;
+
+        final int minType;
+
+        final int[] parents;
+
+        final int[] depths;
+
+        /**
+         * Open-addressing table of codes, slot holds dense index plus one, 0 for empty slot
+         */
+        final String[] codes;
+
+        final int[] codeSlots;
+
+        Snapshot(ContextType root) {
+            this.root = root;
+
+            // Flatten the tree, recording the position of each type's parent and its depth
+            List<Frame> flattened = new ArrayList<>();
+            Deque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(root, -1, 0));
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            while (!stack.isEmpty()) {
+                Frame f = stack.pop();
+                ContextType t = f.type;
+                Assert.notNull(t.getType(), "Type number of context type cannot be null");
+                if (flattened.size() >= MAX_TYPE_SPAN) {
+                    throw new IllegalArgumentException("Too many context types, the type tree may have a cycle");
+                }
+                int position = flattened.size();
+                flattened.add(f);
+                min = Math.min(min, t.getType());
+                max = Math.max(max, t.getType());
+                ContextType[] children = t.getChildren();
+                if (children != null) {
+                    for (ContextType child : children) {
+                        if (child != null) {
+                            stack.push(new Frame(child, position, f.depth + 1));
+                        }
+                    }
+                }
+            }
+            if ((long) max - min >= MAX_TYPE_SPAN) {
+                throw new IllegalArgumentException("Span of context type numbers is too large: [" + min + ", " + max + "]");
+            }
+
+            this.minType = min;
+            this.types = new ContextType[max - min + 1];
+            this.parents = new int[types.length];
+            this.depths = new int[types.length];
+            for (Frame f : flattened) {
+                ContextType t = f.type;
+                int index = t.getType() - min;
+                if (types[index] != null) {
+                    throw new IllegalArgumentException("Duplicate context type: " + t.getType());
+                }
+                types[index] = t;
+            }
+
+            int capacity = Integer.highestOneBit(Math.max(flattened.size(), 1) * 2 - 1) << 1;
+            this.codes = new String[capacity];
+            this.codeSlots = new int[capacity];
+            for (Frame f : flattened) {
+                ContextType t = f.type;
+                int index = t.getType() - min;
+                parents[index] = f.parent < 0 ? -1 : flattened.get(f.parent).type.getType() - min;
+                depths[index] = f.depth;
+
+                if (t.getCode() != null) {
+                    int slot = spread(t.getCode().hashCode()) & (capacity - 1);
+                    while (codes[slot] != null) {
+                        if (codes[slot].equals(t.getCode())) {
+                            throw new IllegalArgumentException("Duplicate context type code: " + t.getCode());
+                        }
+                        slot = (slot + 1) & (capacity - 1);
+                    }
+                    codes[slot] = t.getCode();
+                    codeSlots[slot] = index + 1;
+                }
+            }
+        }
+
+        int indexOf(int type) {
+            long index = (long) type - minType;
+            return index >= 0 && index < types.length && types[(int) index] != null ? (int) index : -1;
+        }
+
+        int indexOf(String code) {
+            int mask = codes.length - 1;
+            for (int slot = spread(code.hashCode()) & mask; codes[slot] != null; slot = (slot + 1) & mask) {
+                if (codes[slot].equals(code)) {
+                    return codeSlots[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static final class Frame {
+        final ContextType type;
+
+        /**
+         * Position of the parent in the flattened list, -1 for the root
+         */
+        final int parent;
+
+        final int depth;
+
+        Frame(ContextType type, int parent, int depth) {
+            this.type = type;
+            this.parent = parent;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+import com.tdoer.bedrock.cache.LocalCache;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Parses context path of the grammar <code>type.id(-type.id)*</code>, say,
+ * "22.1-23.1", into interned {@link ContextPath}. The string is scanned character by character
+ * without creating any intermediate string, and parsed paths are cached by the raw string.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class DefaultContextPathParser implements ContextPathParser {
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    public static final long DEFAULT_CACHE_TTL = 3600;
+
+    private final LocalCache<String, ContextPath> cache;
+
+    public DefaultContextPathParser() {
+        this(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL, TimeUnit.SECONDS);
+    }
+
+    public DefaultContextPathParser(int maximumSize, long ttl, TimeUnit unit) {
+        this(new LocalCache<>(maximumSize, ttl, unit));
+    }
+
+    public DefaultContextPathParser(LocalCache<String, ContextPath> cache) {
+        Assert.notNull(cache, "LocalCache cannot be null");
+
+        this.cache = cache;
+    }
+
+    /**
+     * Parse the context path
+     *
+     * @param contextPath Context path string
+     * @return Interned context path
+     * @throws InvalidContextPathException if the context path is malformed
+     */
+    @Override
+    public ContextPath parse(String contextPath) {
+        if (contextPath == null) {
+            throw malformed(null, 0);
+        }
+        return cache.get(contextPath, DefaultContextPathParser::doParse);
+    }
+
+    protected static ContextPath doParse(String contextPath) {
+        final int length = contextPath.length();
+        ContextPath path = null;
+        int pos = 0;
+        while (true) {
+            // Context type
+            int typeStart = pos;
+            long type = 0;
+            while (pos < length && isDigit(contextPath.charAt(pos))) {
+                type = type * 10 + (contextPath.charAt(pos) - '0');
+                if (type > Integer.MAX_VALUE) {
+                    throw malformed(contextPath, pos);
+                }
+                pos++;
+            }
+            if (pos == typeStart || pos == length || contextPath.charAt(pos) != '.') {
+                throw malformed(contextPath, pos);
+            }
+            pos++;
+
+            // Context instance Id
+            int idStart = pos;
+            long id = 0;
+            while (pos < length && isDigit(contextPath.charAt(pos))) {
+                int digit = contextPath.charAt(pos) - '0';
+                if (id > (Long.MAX_VALUE - digit) / 10) {
+                    throw malformed(contextPath, pos);
+                }
+                id = id * 10 + digit;
+                pos++;
+            }
+            if (pos == idStart) {
+                throw malformed(contextPath, pos);
+            }
+
+            path = ContextPath.of((int) type, id, path);
+
+            if (pos == length) {
+                return path;
+            }
+            if (contextPath.charAt(pos) != '-') {
+                throw malformed(contextPath, pos);
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static InvalidContextPathException malformed(String contextPath, int position) {
+        InvalidContextPathException ex = new StacklessInvalidContextPathException(BedrockErrorCodes.MALFORMED_CONTEXT_PATH, contextPath, position);
+        ex.setContextPath(contextPath);
+        ex.setPosition(position);
+        return ex;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @Description A {@link ContextInstanceCenter} which indexes children of context instances, so
+ * that a context instance's children and whole subtree can be walked.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public interface HierarchicalContextInstanceCenter extends ContextInstanceCenter {
+
+    /**
+     * List direct children of the context instance
+     *
+     * @param contextPath Context path of the instance
+     * @param list        List to add children into
+     */
+    void listChildren(ContextPath contextPath, List<ContextInstance> list);
+
+    /**
+     * Iterate direct children of the context instance. The default implementation lists all
+     * children first, centers holding children in memory should override it to iterate lazily.
+     *
+     * @param contextPath Context path of the instance
+     * @return Iterator of the children
+     */
+    default Iterator<ContextInstance> iterateChildren(ContextPath contextPath) {
+        List<ContextInstance> list = new ArrayList<>();
+        listChildren(contextPath, list);
+        return list.iterator();
+    }
+
+    /**
+     * Stream the context instance and all its descendants, parents come before their children.
+     * Children are iterated lazily in batches as the stream goes, and the stream splits on child
+     * boundaries, use {@link Stream#parallel()} to walk a large subtree in parallel.
+     *
+     * @param contextPath Context path of the subtree root
+     * @return Stream of the subtree, empty if the instance doesn't exist
+     */
+    default Stream<ContextInstance> streamSubtree(ContextPath contextPath) {
+        ContextInstance root = getContextInstance(contextPath);
+        if (root == null) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(new ContextSubtreeSpliterator(this, root), false);
+    }
+}
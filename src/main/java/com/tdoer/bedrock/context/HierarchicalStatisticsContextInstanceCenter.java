@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.metrics.ContextHierarchyStatistics;
+
+import java.util.List;
+
+/**
+ * @Description A {@link StatisticsContextInstanceCenter} of a hierarchical center, which records
+ * count of children of each children listing as well. Subtree streams go through
+ * {@link #listChildren(ContextPath, List)}, so they're recorded too.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class HierarchicalStatisticsContextInstanceCenter extends StatisticsContextInstanceCenter implements HierarchicalContextInstanceCenter {
+
+    private final HierarchicalContextInstanceCenter delegate;
+
+    public HierarchicalStatisticsContextInstanceCenter(HierarchicalContextInstanceCenter delegate) {
+        this(delegate, new ContextHierarchyStatistics());
+    }
+
+    public HierarchicalStatisticsContextInstanceCenter(HierarchicalContextInstanceCenter delegate, ContextHierarchyStatistics statistics) {
+        super(delegate, statistics);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void listChildren(ContextPath contextPath, List<ContextInstance> list) {
+        int from = list.size();
+        delegate.listChildren(contextPath, list);
+        getStatistics().recordFanOut(list.size() - from);
+        for (int i = from; i < list.size(); i++) {
+            getStatistics().recordInstance(list.get(i));
+        }
+    }
+
+    @Override
+    public HierarchicalContextInstanceCenter getDelegate() {
+        return delegate;
+    }
+}
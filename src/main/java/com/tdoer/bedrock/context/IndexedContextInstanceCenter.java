@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @Description In-memory {@link HierarchicalContextInstanceCenter}, a hash index from context
+ * path to node, where each node links its parent node and holds its child nodes keyed by their
+ * paths. Point lookup is O(1), ancestors, children and subtree are answered in O(depth + output).
+ * Each node counts the instances of its subtree, so the size of a subtree is known before it's
+ * walked.
+ * A parent indexed after its children is held by a placeholder node till then, placeholders
+ * left without children are dropped.
+ * <p>
+ * Nodes hold interned context paths, and plain instances are indexed as
+ * {@link SharedContextInstance}s, which hold the interned path and resolve parents from the index,
+ * so a tenant or office prefix is kept once however many instances are under it. Instances of
+ * subtypes, say, tenants, are kept as they are. Create the center with sharing off to keep all
+ * instances as they are, say, when their context configs are loaded lazily.
+ * </p>
+ * <p>
+ * Reads are lock-free, writes are serialized. The index is loaded by {@link #load(Collection)}
+ * and kept up to date by {@link #put(ContextInstance)}, {@link #remove(ContextPath)} and
+ * {@link #move(ContextPath, Collection)} when instances are created, deleted or moved.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class IndexedContextInstanceCenter implements HierarchicalContextInstanceCenter {
+
+    private final static Logger logger = LoggerFactory.getLogger(IndexedContextInstanceCenter.class);
+
+    private final Map<ContextPath, Node> nodes = new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+
+    /**
+     * Count of indexed instances, placeholders excluded
+     */
+    private volatile int instanceCount;
+
+    private final boolean shareInstances;
+
+    public IndexedContextInstanceCenter() {
+        this(true);
+    }
+
+    /**
+     * @param shareInstances Whether to index plain instances as {@link SharedContextInstance}s
+     */
+    public IndexedContextInstanceCenter(boolean shareInstances) {
+        this.shareInstances = shareInstances;
+    }
+
+    /**
+     * Index the context instances, parents may come after their children
+     *
+     * @param instances
+     */
+    public void load(Collection<? extends ContextInstance> instances) {
+        Assert.notNull(instances, "Context instances cannot be null");
+
+        synchronized (writeLock) {
+            for (ContextInstance instance : instances) {
+                doPut(instance);
+            }
+        }
+        logger.info("Indexed {} context instances", instances.size());
+    }
+
+    /**
+     * Index a created or updated context instance
+     *
+     * @param instance
+     */
+    public void put(ContextInstance instance) {
+        Assert.notNull(instance, "ContextInstance cannot be null");
+
+        synchronized (writeLock) {
+            doPut(instance);
+        }
+    }
+
+    /**
+     * Remove the context instance and all its descendants from the index
+     *
+     * @param contextPath
+     * @return Count of removed context instances
+     */
+    public int remove(ContextPath contextPath) {
+        Assert.notNull(contextPath, "ContextPath cannot be null");
+
+        synchronized (writeLock) {
+            return doRemove(contextPath);
+        }
+    }
+
+    /**
+     * Move a subtree, it's removed from the old path, and the instances, carrying their new
+     * context paths, are indexed. Readers never see the subtree at both paths.
+     *
+     * @param oldPath   Old context path of the subtree root
+     * @param instances All instances of the subtree with new context paths
+     */
+    public void move(ContextPath oldPath, Collection<? extends ContextInstance> instances) {
+        Assert.notNull(oldPath, "ContextPath cannot be null");
+        Assert.notNull(instances, "Context instances cannot be null");
+
+        synchronized (writeLock) {
+            int removed = doRemove(oldPath);
+            for (ContextInstance instance : instances) {
+                doPut(instance);
+            }
+            logger.debug("Moved {} context instances from {}", removed, oldPath);
+        }
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            nodes.clear();
+            instanceCount = 0;
+        }
+    }
+
+    /**
+     * @return Count of nodes, including placeholders
+     */
+    int getNodeCount() {
+        return nodes.size();
+    }
+
+    public int size() {
+        return instanceCount;
+    }
+
+    @Override
+    public ContextInstance getContextInstance(ContextPath contextPath) {
+        Node node = nodes.get(contextPath);
+        return node != null ? node.instance : null;
+    }
+
+    @Override
+    public void listAncestors(ContextPath contextPath, List<ContextInstance> list) {
+        Node node = nodes.get(contextPath);
+        if (node == null) {
+            return;
+        }
+        for (Node n = node.parent; n != null; n = n.parent) {
+            ContextInstance instance = n.instance;
+            if (instance != null) {
+                list.add(instance);
+            }
+        }
+    }
+
+    @Override
+    public void listChildren(ContextPath contextPath, List<ContextInstance> list) {
+        Node node = nodes.get(contextPath);
+        if (node == null) {
+            return;
+        }
+        for (Node child : node.children.values()) {
+            ContextInstance instance = child.instance;
+            if (instance != null) {
+                list.add(instance);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<ContextInstance> iterateChildren(ContextPath contextPath) {
+        Node node = nodes.get(contextPath);
+        if (node == null) {
+            return Collections.emptyIterator();
+        }
+        Iterator<Node> children = node.children.values().iterator();
+        return new Iterator<ContextInstance>() {
+            private ContextInstance next;
+
+            @Override
+            public boolean hasNext() {
+                // Skip placeholders
+                while (next == null && children.hasNext()) {
+                    next = children.next().instance;
+                }
+                return next != null;
+            }
+
+            @Override
+            public ContextInstance next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ContextInstance ret = next;
+                next = null;
+                return ret;
+            }
+        };
+    }
+
+    /**
+     * Stream the subtree, its instance count is taken as the initial size estimate
+     */
+    @Override
+    public Stream<ContextInstance> streamSubtree(ContextPath contextPath) {
+        Node node = nodes.get(contextPath);
+        ContextInstance root = node != null ? node.instance : null;
+        if (root == null) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(new ContextSubtreeSpliterator(this, root, node.subtreeSize), false);
+    }
+
+    private void doPut(ContextInstance instance) {
+        Assert.notNull(instance.getContextPath(), "ContextPath of the context instance cannot be null");
+
+        if (shareInstances && SharedContextInstance.isShareable(instance)) {
+            instance = SharedContextInstance.of(instance, this);
+        }
+        ContextPath path = instance.getContextPath().intern();
+        Node node = nodes.get(path);
+        if (node == null) {
+            node = new Node(path, ensureParent(path));
+            node.instance = instance;
+            attach(node);
+            count(node, 1);
+        } else {
+            boolean placeholder = node.instance == null;
+            node.instance = instance;
+            if (placeholder) {
+                count(node, 1);
+            }
+        }
+    }
+
+    /**
+     * Add the delta to instance counts of the node and its ancestors
+     */
+    private void count(Node node, int delta) {
+        for (Node n = node; n != null; n = n.parent) {
+            n.subtreeSize += delta;
+        }
+        instanceCount += delta;
+    }
+
+    /**
+     * Get or create the placeholder nodes of the parent paths
+     */
+    private Node ensureParent(ContextPath path) {
+        ContextPath parentPath = path.getParentPath();
+        if (parentPath == null) {
+            return null;
+        }
+        Node parent = nodes.get(parentPath);
+        if (parent == null) {
+            parent = new Node(parentPath, ensureParent(parentPath));
+            attach(parent);
+        }
+        return parent;
+    }
+
+    private void attach(Node node) {
+        if (node.parent != null) {
+            node.parent.children.put(node.path, node);
+        }
+        nodes.put(node.path, node);
+    }
+
+    private int doRemove(ContextPath contextPath) {
+        Node node = nodes.get(contextPath);
+        if (node == null) {
+            return 0;
+        }
+        if (node.parent != null) {
+            count(node.parent, -node.subtreeSize);
+        } else {
+            instanceCount -= node.subtreeSize;
+        }
+        detach(node);
+        int count = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            nodes.remove(n.path);
+            if (n.instance != null) {
+                count++;
+            }
+            for (Node child : n.children.values()) {
+                stack.push(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Unlink the node from its parent, and drop the placeholder parents left without children
+     */
+    private void detach(Node node) {
+        Node parent = node.parent;
+        if (parent == null) {
+            return;
+        }
+        parent.children.remove(node.path);
+        if (parent.instance == null && parent.children.isEmpty()) {
+            nodes.remove(parent.path);
+            detach(parent);
+        }
+    }
+
+    private static final class Node {
+        final ContextPath path;
+
+        final Node parent;
+
+        final Map<ContextPath, Node> children = new ConcurrentHashMap<>();
+
+        /**
+         * {@code null} if it's a placeholder of a parent not indexed yet
+         */
+        volatile ContextInstance instance;
+
+        /**
+         * Count of instances in the subtree, the node's own included, it's written under the write lock
+         */
+        volatile int subtreeSize;
+
+        Node(ContextPath path, Node parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+}
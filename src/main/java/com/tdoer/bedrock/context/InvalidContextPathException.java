@@ -28,6 +28,8 @@ public class InvalidContextPathException extends ErrorCodeException {
 
     private String contextPath;
 
+    private int position = -1;
+
     public InvalidContextPathException(int errorCode) {
 
         super(errorCode);
@@ -56,4 +58,15 @@ public class InvalidContextPathException extends ErrorCodeException {
     public void setContextPath(String contextPath) {
         this.contextPath = contextPath;
     }
+
+    /**
+     * @return Position of the offending character in the context path, or -1 if unknown
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.springframework.util.Assert;
+
+/**
+ * @Description Immutable {@link ContextInstance} which shares its ancestors with its siblings.
+ * It holds the interned context path, whose parent chain is canonical, instead of its own
+ * copies of parent instances, and resolves parent and top parent from the owning
+ * {@link ContextInstanceCenter} when asked. So the same tenant or office prefix is kept once
+ * however many instances are under it, and an updated parent is seen by all its children.
+ * <p>
+ * It's a snapshot of the source, context config included, and of type {@link ContextInstance}
+ * only, so copy only plain instances, see {@link #isShareable(ContextInstance)}.
+ * </p>
+ * <p>
+ * The owning center is not serialized, parents of a deserialized instance are {@code null}.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public final class SharedContextInstance implements ContextInstance {
+
+    private final Long instanceId;
+
+    private final String instanceName;
+
+    private final String code;
+
+    private final Long detailObjectId;
+
+    private final ContextPath contextPath;
+
+    private final ContextType contextType;
+
+    private final ContextConfig contextConfig;
+
+    private final transient ContextInstanceCenter center;
+
+    /**
+     * Whether instances of a class are of no sub-interface of {@link ContextInstance}
+     */
+    private static final ClassValue<Boolean> PLAIN = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Class<?> i : c.getInterfaces()) {
+                    if (i != ContextInstance.class && ContextInstance.class.isAssignableFrom(i)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    };
+
+    private SharedContextInstance(ContextInstance source, ContextInstanceCenter center) {
+        this.instanceId = source.getInstanceId();
+        this.instanceName = source.getInstanceName();
+        this.code = source.getCode();
+        this.detailObjectId = source.getDetailObjectId();
+        this.contextPath = source.getContextPath().intern();
+        this.contextType = source.getContextType();
+        this.contextConfig = source.getContextConfig();
+        this.center = center;
+    }
+
+    /**
+     * Copy the context instance, its parents will be resolved from the center
+     *
+     * @param source Context instance to copy
+     * @param center Center owning the context instance and its parents
+     * @return Shared context instance, or the source itself if it's owned by the center already
+     */
+    public static SharedContextInstance of(ContextInstance source, ContextInstanceCenter center) {
+        Assert.notNull(source, "ContextInstance cannot be null");
+        Assert.notNull(source.getContextPath(), "ContextPath of the context instance cannot be null");
+        Assert.notNull(center, "ContextInstanceCenter cannot be null");
+
+        if (source instanceof SharedContextInstance && ((SharedContextInstance) source).center == center) {
+            return (SharedContextInstance) source;
+        }
+        return new SharedContextInstance(source, center);
+    }
+
+    /**
+     * Check if the context instance can be copied without losing anything, that's, it's of no
+     * subtype of {@link ContextInstance}, say, {@link com.tdoer.bedrock.tenant.Tenant}
+     *
+     * @param instance Context instance
+     * @return true if it's a plain context instance
+     */
+    public static boolean isShareable(ContextInstance instance) {
+        return instance != null && PLAIN.get(instance.getClass());
+    }
+
+    @Override
+    public Long getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public String getInstanceName() {
+        return instanceName;
+    }
+
+    @Override
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public Long getDetailObjectId() {
+        return detailObjectId;
+    }
+
+    @Override
+    public ContextInstance getParent() {
+        ContextPath parentPath = contextPath.getParentPath();
+        if (parentPath == null || center == null) {
+            return null;
+        }
+        return center.getContextInstance(parentPath);
+    }
+
+    @Override
+    public ContextInstance getTopParent() {
+        ContextPath topPath = contextPath.getTopPath();
+        if (topPath == contextPath) {
+            return this;
+        }
+        return center != null ? center.getContextInstance(topPath) : null;
+    }
+
+    @Override
+    public ContextPath getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public ContextType getContextType() {
+        return contextType;
+    }
+
+    @Override
+    public ContextConfig getContextConfig() {
+        return contextConfig;
+    }
+
+    @Override
+    public String toString() {
+        return "ContextInstance(" + contextPath + ", " + instanceName + ")";
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+/**
+ * @Description An {@link InvalidContextPathException} without stack trace, thrown by the parser
+ * for malformed context paths of requests, which are expected and are rejected as invalid
+ * requests anyway.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class StacklessInvalidContextPathException extends InvalidContextPathException {
+
+    public StacklessInvalidContextPathException(int errorCode, Object... formatArgs) {
+        super(errorCode, formatArgs);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
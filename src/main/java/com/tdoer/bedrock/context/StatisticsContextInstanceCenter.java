@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.metrics.ContextHierarchyStatistics;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description A {@link ContextInstanceCenter} which records context instances served by the
+ * backend center into {@link ContextHierarchyStatistics}, that's, depth and type of each served
+ * instance. Use {@link HierarchicalStatisticsContextInstanceCenter} to record count of children
+ * of each children listing as well.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class StatisticsContextInstanceCenter implements ContextInstanceCenter {
+
+    private final ContextInstanceCenter delegate;
+
+    private final ContextHierarchyStatistics statistics;
+
+    public StatisticsContextInstanceCenter(ContextInstanceCenter delegate) {
+        this(delegate, new ContextHierarchyStatistics());
+    }
+
+    public StatisticsContextInstanceCenter(ContextInstanceCenter delegate, ContextHierarchyStatistics statistics) {
+        Assert.notNull(delegate, "ContextInstanceCenter cannot be null");
+        Assert.notNull(statistics, "ContextHierarchyStatistics cannot be null");
+
+        this.delegate = delegate;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public ContextInstance getContextInstance(ContextPath contextPath) {
+        ContextInstance instance = delegate.getContextInstance(contextPath);
+        statistics.recordInstance(instance);
+        return instance;
+    }
+
+    @Override
+    public Map<ContextPath, ContextInstance> getContextInstances(Collection<ContextPath> contextPaths) {
+        Map<ContextPath, ContextInstance> ret = delegate.getContextInstances(contextPaths);
+        for (ContextInstance instance : ret.values()) {
+            statistics.recordInstance(instance);
+        }
+        return ret;
+    }
+
+    @Override
+    public void listAncestors(ContextPath contextPath, List<ContextInstance> list) {
+        int from = list.size();
+        delegate.listAncestors(contextPath, list);
+        for (int i = from; i < list.size(); i++) {
+            statistics.recordInstance(list.get(i));
+        }
+    }
+
+    public ContextHierarchyStatistics getStatistics() {
+        return statistics;
+    }
+
+    public ContextInstanceCenter getDelegate() {
+        return delegate;
+    }
+}
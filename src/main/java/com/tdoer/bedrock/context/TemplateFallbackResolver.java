@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.cache.LocalCache;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @Description Resolves configurations inherited from context templates. A configuration of
+ * context path "22.1-23.1" is looked up in the fallback chain "22.1-23.1", "22.1-23.0", "22.0-23.0"
+ * (see {@link ContextPath#parentTemplate()}), and the first one found wins.
+ * <p>
+ * The chain is computed once per context path, and the level of the chain where the
+ * configuration is found is cached per (scope, context path), so that a resolution costs one
+ * map probe and one lookup. Call {@link #invalidateAll()} when configurations change.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class TemplateFallbackResolver {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    /**
+     * Level of a configuration found nowhere in the chain
+     */
+    private static final Integer NOT_FOUND = -1;
+
+    private final LocalCache<ContextPath, List<ContextPath>> chains;
+
+    private final LocalCache<Key, Integer> levels;
+
+    public TemplateFallbackResolver() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public TemplateFallbackResolver(int maximumSize, long ttl, TimeUnit unit) {
+        this.chains = new LocalCache<>(maximumSize, ttl, unit);
+        this.levels = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Get the fallback chain of the context path, the path itself comes first
+     *
+     * @param contextPath
+     * @return Unmodifiable list of interned context paths
+     */
+    public List<ContextPath> getFallbackChain(ContextPath contextPath) {
+        Assert.notNull(contextPath, "ContextPath cannot be null");
+
+        // Context path has value equality and a cached hash, it's interned only on a miss
+        return chains.get(contextPath, TemplateFallbackResolver::buildChain);
+    }
+
+    private static List<ContextPath> buildChain(ContextPath contextPath) {
+        List<ContextPath> chain = new ArrayList<>(4);
+        ContextPath p = contextPath.intern();
+        chain.add(p);
+        for (ContextPath next = p.parentTemplate(); next != p; next = p.parentTemplate()) {
+            p = next;
+            chain.add(p);
+        }
+        return Collections.unmodifiableList(chain);
+    }
+
+    /**
+     * Resolve the configuration of the context path
+     *
+     * @param scope       Scope of the configuration, say, a
+     *                    {@link com.tdoer.bedrock.cache.ConfigKey} of the configuration kind and
+     *                    (productId, clientId, tenantId), lookups of different configurations
+     *                    must not share a scope
+     * @param contextPath Context path
+     * @param lookup      Lookup of the configuration at a level of the chain, returns
+     *                    {@code null} if not found
+     * @param <V>         Type of the configuration
+     * @return The configuration, or {@code null} if not found in the chain
+     */
+    public <V> V resolve(Object scope, ContextPath contextPath, Function<ContextPath, V> lookup) {
+        Assert.notNull(scope, "Scope cannot be null");
+        Assert.notNull(lookup, "Lookup cannot be null");
+
+        List<ContextPath> chain = getFallbackChain(contextPath);
+        Key key = new Key(scope, chain.get(0));
+        Integer level = levels.get(key);
+        if (level != null) {
+            if (level.equals(NOT_FOUND)) {
+                return null;
+            }
+            V value = lookup.apply(chain.get(level));
+            if (value != null) {
+                return value;
+            }
+            // The configuration was removed from the level, search the chain again
+        }
+
+        for (int i = 0; i < chain.size(); i++) {
+            V value = lookup.apply(chain.get(i));
+            if (value != null) {
+                levels.put(key, i);
+                return value;
+            }
+        }
+        levels.put(key, NOT_FOUND);
+        return null;
+    }
+
+    /**
+     * Forget levels of the scope, call it when configurations of the scope change
+     *
+     * @param scope
+     */
+    public void invalidateScope(Object scope) {
+        levels.invalidateIf((key, level) -> key.scope.equals(scope));
+    }
+
+    public void invalidateAll() {
+        levels.invalidateAll();
+    }
+
+    private static final class Key {
+        final Object scope;
+
+        final ContextPath contextPath;
+
+        final int hash;
+
+        Key(Object scope, ContextPath contextPath) {
+            this.scope = scope;
+            this.contextPath = contextPath;
+            this.hash = 31 * scope.hashCode() + contextPath.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key rhs = (Key) obj;
+            return hash == rhs.hash && contextPath.equals(rhs.contextPath) && Objects.equals(scope, rhs.scope);
+        }
+    }
+}
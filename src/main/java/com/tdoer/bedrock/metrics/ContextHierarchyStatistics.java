@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+import com.tdoer.bedrock.context.ContextInstance;
+import com.tdoer.bedrock.context.ContextPath;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description Running histograms of the context hierarchy: depth of context paths, children
+ * per instance and instances per context type. They're updated as context instances are served,
+ * so an instance served twice is counted twice, see
+ * {@link com.tdoer.bedrock.context.StatisticsContextInstanceCenter}.
+ * <p>
+ * It's a standard MBean, register it to an MBean server, say, under
+ * {@link #DEFAULT_OBJECT_NAME}, to inspect the histograms.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextHierarchyStatistics implements ContextHierarchyStatisticsMBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "com.tdoer.bedrock:type=ContextHierarchyStatistics";
+
+    /**
+     * Depth buckets 1 ~ 31, and the last bucket for deeper paths, depth of top path is 1
+     */
+    public static final int DEPTH_BUCKETS = 32;
+
+    /**
+     * Fan-out buckets 0, 1, 2~3, ..., and the last bucket for 2^30 and more
+     */
+    public static final int FAN_OUT_BUCKETS = 32;
+
+    private final LongAdder servedCount = new LongAdder();
+
+    private final AtomicLongArray depths = new AtomicLongArray(DEPTH_BUCKETS);
+
+    private final AtomicLongArray fanOuts = new AtomicLongArray(FAN_OUT_BUCKETS);
+
+    private final Map<Integer, LongAdder> types = new ConcurrentHashMap<>();
+
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    private final AtomicInteger maxFanOut = new AtomicInteger();
+
+    /**
+     * Record a served context instance
+     *
+     * @param instance
+     */
+    public void recordInstance(ContextInstance instance) {
+        ContextPath contextPath = instance == null ? null : instance.getContextPath();
+        if (contextPath == null) {
+            return;
+        }
+        servedCount.increment();
+
+        int depth = 0;
+        for (ContextPath p = contextPath; p != null; p = p.getParentPath()) {
+            depth++;
+        }
+        depths.incrementAndGet(Math.min(depth, DEPTH_BUCKETS) - 1);
+        updateMax(maxDepth, depth);
+
+        Integer type = contextPath.getType();
+        if (type != null) {
+            types.computeIfAbsent(type, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Record count of children listed for an instance
+     *
+     * @param children
+     */
+    public void recordFanOut(int children) {
+        int bucket = children <= 0 ? 0 : Math.min(32 - Integer.numberOfLeadingZeros(children), FAN_OUT_BUCKETS - 1);
+        fanOuts.incrementAndGet(bucket);
+        updateMax(maxFanOut, children);
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getServedCount() {
+        return servedCount.sum();
+    }
+
+    @Override
+    public long[] getDepthHistogram() {
+        return snapshot(depths);
+    }
+
+    @Override
+    public long[] getFanOutHistogram() {
+        return snapshot(fanOuts);
+    }
+
+    private static long[] snapshot(AtomicLongArray array) {
+        long[] ret = new long[array.length()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = array.get(i);
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<Integer, Long> getInstancesPerType() {
+        Map<Integer, Long> ret = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : types.entrySet()) {
+            ret.put(entry.getKey(), entry.getValue().sum());
+        }
+        return ret;
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public int getMaxFanOut() {
+        return maxFanOut.get();
+    }
+
+    @Override
+    public void reset() {
+        servedCount.reset();
+        for (int i = 0; i < DEPTH_BUCKETS; i++) {
+            depths.set(i, 0);
+        }
+        for (int i = 0; i < FAN_OUT_BUCKETS; i++) {
+            fanOuts.set(i, 0);
+        }
+        types.clear();
+        maxDepth.set(0);
+        maxFanOut.set(0);
+    }
+}
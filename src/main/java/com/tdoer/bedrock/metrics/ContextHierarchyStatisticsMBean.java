@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+import java.util.Map;
+
+/**
+ * @Description JMX management interface of {@link ContextHierarchyStatistics}
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public interface ContextHierarchyStatisticsMBean {
+
+    /**
+     * @return Count of context instances served
+     */
+    long getServedCount();
+
+    /**
+     * @return Served context instances by depth of path, the last bucket counts all deeper
+     */
+    long[] getDepthHistogram();
+
+    /**
+     * @return Listed children per instance by power of two buckets: 0, 1, 2~3, 4~7 and so on
+     */
+    long[] getFanOutHistogram();
+
+    /**
+     * @return Served context instances by context type number
+     */
+    Map<Integer, Long> getInstancesPerType();
+
+    int getMaxDepth();
+
+    int getMaxFanOut();
+
+    void reset();
+}
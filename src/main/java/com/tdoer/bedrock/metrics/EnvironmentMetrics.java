@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+/**
+ * @Description Metrics SPI of cloud environment parsing, called by the environment parse filter
+ * and the request environment extractor at each stage. Implementations must be thread-safe.
+ * <p>
+ * An outcome is {@link #SUCCESS}, or the error code of the failure, say,
+ * {@link com.tdoer.bedrock.BedrockErrorCodes#NO_TENANT_CLIENT_BY_HOST}. Callers pass durations
+ * as primitive nanoseconds, so that the {@link #NOOP} metrics adds no allocation to a request.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public interface EnvironmentMetrics {
+
+    /**
+     * Outcome of a succeeded stage
+     */
+    int SUCCESS = 0;
+
+    /**
+     * Metrics which records nothing, the default
+     */
+    EnvironmentMetrics NOOP = new EnvironmentMetrics() {
+        @Override
+        public void recordStage(EnvironmentStage stage, int outcome, long durationNanos) {
+        }
+
+        @Override
+        public void increment(EnvironmentStage stage, int outcome) {
+        }
+    };
+
+    /**
+     * Record the time spent in a stage
+     *
+     * @param stage         Stage
+     * @param outcome       {@link #SUCCESS} or error code
+     * @param durationNanos Duration in nanoseconds
+     */
+    void recordStage(EnvironmentStage stage, int outcome, long durationNanos);
+
+    /**
+     * Increase the counter of a stage by one
+     *
+     * @param stage   Stage
+     * @param outcome {@link #SUCCESS} or error code
+     */
+    void increment(EnvironmentStage stage, int outcome);
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+import java.util.Locale;
+
+/**
+ * @Description Stages of parsing a cloud environment for a request, used as the 'stage' tag
+ * of {@link EnvironmentMetrics}.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public enum EnvironmentStage {
+    /**
+     * Whole parsing of the environment, from request or from digest
+     */
+    PARSE,
+    /**
+     * Verifying the parsed environment
+     */
+    VERIFY,
+    /**
+     * Writing response headers, cookies and request attributes
+     */
+    RESPONSE_HEADER,
+    /**
+     * Loading tenant client from rental center
+     */
+    TENANT_CLIENT_LOOKUP,
+    /**
+     * Loading tenant from rental center
+     */
+    TENANT_LOOKUP,
+    /**
+     * Loading product rental from rental center
+     */
+    PRODUCT_RENTAL_LOOKUP,
+    /**
+     * Loading context instance from context instance center
+     */
+    CONTEXT_INSTANCE_LOOKUP,
+    /**
+     * Loading context installation from client config center
+     */
+    CONTEXT_INSTALLATION_LOOKUP,
+    /**
+     * Loading application from application repository
+     */
+    APPLICATION_LOOKUP,
+    /**
+     * Counter of environments served by the digest environment cache
+     */
+    ENVIRONMENT_CACHE_HIT,
+    /**
+     * Counter of lookups rejected by the negative lookup cache
+     */
+    NEGATIVE_CACHE_HIT;
+
+    private final String tagValue = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * @return Lower case name used as tag value
+     */
+    public String getTagValue() {
+        return tagValue;
+    }
+}
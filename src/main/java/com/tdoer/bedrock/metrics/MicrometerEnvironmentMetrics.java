@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description {@link EnvironmentMetrics} backed by a Micrometer <code>MeterRegistry</code>, it's
+ * only usable when micrometer-core is on the classpath. Stage durations are recorded by timer
+ * '{prefix}.stage' and counters by '{prefix}.count', both tagged by 'stage' and 'outcome'.
+ * <p>
+ * Meters are created once per (stage, outcome) and looked up from small per-stage arrays,
+ * so recording allocates nothing.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class MicrometerEnvironmentMetrics implements EnvironmentMetrics {
+
+    public static final String DEFAULT_PREFIX = "bedrock.environment";
+
+    private final MeterRegistry registry;
+
+    private final String timerName;
+
+    private final String counterName;
+
+    private final Meters<Timer>[] timers;
+
+    private final Meters<Counter>[] counters;
+
+    public MicrometerEnvironmentMetrics(MeterRegistry registry) {
+        this(registry, DEFAULT_PREFIX);
+    }
+
+    @SuppressWarnings("unchecked")
+    public MicrometerEnvironmentMetrics(MeterRegistry registry, String prefix) {
+        Assert.notNull(registry, "MeterRegistry cannot be null");
+        Assert.hasText(prefix, "Prefix cannot be blank");
+
+        this.registry = registry;
+        this.timerName = prefix + ".stage";
+        this.counterName = prefix + ".count";
+        EnvironmentStage[] stages = EnvironmentStage.values();
+        this.timers = new Meters[stages.length];
+        this.counters = new Meters[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            timers[i] = new Meters<>();
+            counters[i] = new Meters<>();
+        }
+    }
+
+    @Override
+    public void recordStage(EnvironmentStage stage, int outcome, long durationNanos) {
+        Timer timer = timers[stage.ordinal()].find(outcome);
+        if (timer == null) {
+            timer = timers[stage.ordinal()].add(outcome, Timer.builder(timerName)
+                    .tag("stage", stage.getTagValue())
+                    .tag("outcome", String.valueOf(outcome))
+                    .register(registry));
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void increment(EnvironmentStage stage, int outcome) {
+        Counter counter = counters[stage.ordinal()].find(outcome);
+        if (counter == null) {
+            counter = counters[stage.ordinal()].add(outcome, Counter.builder(counterName)
+                    .tag("stage", stage.getTagValue())
+                    .tag("outcome", String.valueOf(outcome))
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * Copy-on-write meters of a stage indexed by outcome, a stage only has a few outcomes.
+     */
+    private static final class Meters<M> {
+        private volatile int[] outcomes = new int[0];
+
+        private volatile Object[] meters = new Object[0];
+
+        @SuppressWarnings("unchecked")
+        M find(int outcome) {
+            // Outcomes are published after meters, read them first so that o.length <= m.length
+            int[] o = outcomes;
+            Object[] m = meters;
+            for (int i = 0; i < o.length; i++) {
+                if (o[i] == outcome) {
+                    return (M) m[i];
+                }
+            }
+            return null;
+        }
+
+        synchronized M add(int outcome, M meter) {
+            M existing = find(outcome);
+            if (existing != null) {
+                return existing;
+            }
+            int n = outcomes.length;
+            Object[] m = Arrays.copyOf(meters, n + 1);
+            m[n] = meter;
+            int[] o = Arrays.copyOf(outcomes, n + 1);
+            o[n] = outcome;
+            meters = m;
+            outcomes = o;
+            return meter;
+        }
+    }
+}
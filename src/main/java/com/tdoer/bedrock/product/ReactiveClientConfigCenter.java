@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.product;
+
+import com.tdoer.bedrock.context.ContextPath;
+import reactor.core.publisher.Mono;
+
+/**
+ * @Description Non-blocking counterpart of {@link ClientConfigCenter}
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public interface ReactiveClientConfigCenter {
+
+    /**
+     * Get the context installation in the tenant's client of specific context path
+     *
+     * @param contextPath Context path, {@code null} for the tenant
+     * @param productId
+     * @param clientId
+     * @param tenantId
+     * @return The context installation, or empty if not found
+     */
+    Mono<ContextInstallation> getContextInstallation(ContextPath contextPath, String productId, String clientId, Long tenantId);
+}
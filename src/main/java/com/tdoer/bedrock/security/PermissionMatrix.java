@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.security;
+
+import com.tdoer.bedrock.application.ApplicationResource;
+import com.tdoer.bedrock.cache.ConfigKey;
+import com.tdoer.bedrock.cache.LocalCache;
+import com.tdoer.bedrock.context.ContextConfigCenter;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextRole;
+import com.tdoer.bedrock.context.RoleAuthority;
+import com.tdoer.bedrock.resource.Resource;
+import com.tdoer.bedrock.service.ServiceMethod;
+import com.tdoer.bedrock.service.ServiceMethodIndex;
+import com.tdoer.bedrock.service.ServiceMethodMatcher;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description Precomputed permissions of service methods. Each {@link ContextRole}'s permitted
+ * service methods, that's, service methods of the application resources granted to the role, are
+ * kept as a bit set over the dense indexes of {@link ServiceMethodIndex}. A user's permissions in
+ * a context are the union of the bit sets of the user's roles there, cached per (user, context
+ * path). So an access check is a route match plus a bit test.
+ * <p>
+ * Bit sets are never modified once cached. Call {@link #invalidateRole(Long)} when authorities
+ * of a role change, and {@link #invalidateUser(Long)} when roles of a user change.
+ * </p>
+ * <p>
+ * Each role has its own version, increased by {@link #invalidateRole(Long)}. A role's bit set is
+ * stamped with the role version read before it's loaded, and a user's bit set with the versions of
+ * the user's roles, a bit set of an older version is neither put nor returned, so a load in flight
+ * while a permission is revoked doesn't bring it back, and invalidating a role expires only the
+ * users holding it. A user's bit set loaded while {@link #invalidateUser(Long)} runs is dropped
+ * the same way by the user version, which is checked before and after the put only, so that
+ * invalidating one user doesn't expire the others.
+ * </p>
+ * <p>
+ * Bit sets are trimmed to the highest permitted index, so a role granted a few service methods
+ * doesn't take a word per 64 service methods of the whole index.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class PermissionMatrix {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    private final ContextConfigCenter contextConfigCenter;
+
+    private final ServiceMethodIndex methodIndex;
+
+    private final LocalCache<Long, Permissions> rolePermissions;
+
+    private final LocalCache<ConfigKey, UserPermissions> userPermissions;
+
+    /**
+     * Versions of invalidated roles, taken from the sequence, a role's version is never less than
+     * the version of {@link #invalidateAll()}. They're kept once a role is invalidated.
+     */
+    private final ConcurrentHashMap<Long, Long> roleVersions = new ConcurrentHashMap<>();
+
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    private volatile long allVersion;
+
+    private final AtomicLong userVersion = new AtomicLong();
+
+    public PermissionMatrix(ContextConfigCenter contextConfigCenter, ServiceMethodIndex methodIndex) {
+        this(contextConfigCenter, methodIndex, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public PermissionMatrix(ContextConfigCenter contextConfigCenter, ServiceMethodIndex methodIndex,
+                            int maximumSize, long ttl, TimeUnit unit) {
+        Assert.notNull(contextConfigCenter, "ContextConfigCenter cannot be null");
+        Assert.notNull(methodIndex, "ServiceMethodIndex cannot be null");
+
+        this.contextConfigCenter = contextConfigCenter;
+        this.methodIndex = methodIndex;
+        this.rolePermissions = new LocalCache<>(maximumSize, ttl, unit);
+        this.userPermissions = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Check if the user is permitted to access the request in the context
+     *
+     * @param userId      User Id
+     * @param contextPath Context path
+     * @param matcher     Matcher of the service methods in the context
+     * @param httpMethod  HTTP method of the request
+     * @param path        Request path
+     * @return true if permitted
+     */
+    public boolean permit(Long userId, ContextPath contextPath, ServiceMethodMatcher matcher, String httpMethod, String path) {
+        ServiceMethod method = matcher.match(httpMethod, path);
+        return method != null && permit(userId, contextPath, method);
+    }
+
+    /**
+     * Check if the user is permitted to access the service method in the context
+     *
+     * @param userId      User Id
+     * @param contextPath Context path
+     * @param method      Service method
+     * @return true if permitted
+     */
+    public boolean permit(Long userId, ContextPath contextPath, ServiceMethod method) {
+        int index = methodIndex.find(method.getId());
+        return index >= 0 && getUserPermissions(userId, contextPath).get(index);
+    }
+
+    /**
+     * Check if the role is permitted to access the service method
+     *
+     * @param role   Context role
+     * @param method Service method
+     * @return true if permitted
+     */
+    public boolean permit(ContextRole role, ServiceMethod method) {
+        int index = methodIndex.find(method.getId());
+        return index >= 0 && getRolePermissions(role).get(index);
+    }
+
+    /**
+     * @return Bit set of service methods permitted to the user in the context, don't modify it
+     */
+    protected BitSet getUserPermissions(Long userId, ContextPath contextPath) {
+        Assert.notNull(userId, "User Id cannot be null");
+        Assert.notNull(contextPath, "ContextPath cannot be null");
+
+        ConfigKey.Builder probe = ConfigKey.probe().add(userId).add(contextPath);
+        UserPermissions permissions = userPermissions.get(probe.probeKey());
+        if (permissions != null && permissions.isCurrent()) {
+            return permissions.bits;
+        }
+
+        // Built before listing roles, the config center may probe other caches
+        ConfigKey key = probe.build();
+
+        long user = userVersion.get();
+        List<ContextRole> roles = new ArrayList<>();
+        contextConfigCenter.listUserRoles(contextPath, userId, roles);
+        Long[] roleIds = new Long[roles.size()];
+        long[] versions = new long[roles.size()];
+        BitSet bits;
+        if (roles.size() == 1) {
+            roleIds[0] = roles.get(0).getId();
+            versions[0] = getRoleVersion(roleIds[0]);
+            bits = getRolePermissions(roles.get(0));
+        } else {
+            bits = new BitSet();
+            for (int i = 0; i < roleIds.length; i++) {
+                roleIds[i] = roles.get(i).getId();
+                versions[i] = getRoleVersion(roleIds[i]);
+                bits.or(getRolePermissions(roles.get(i)));
+            }
+            bits = trim(bits);
+        }
+        UserPermissions loaded = new UserPermissions(roleIds, versions, bits);
+        if (loaded.isCurrent() && user == userVersion.get()) {
+            userPermissions.put(key, loaded);
+            if (user != userVersion.get()) {
+                // The user may be invalidated between the check and the put
+                userPermissions.invalidate(key);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return Bit set of service methods permitted to the role, don't modify it
+     */
+    protected BitSet getRolePermissions(ContextRole role) {
+        Assert.notNull(role.getId(), "Id of ContextRole cannot be null");
+
+        long version = getRoleVersion(role.getId());
+        Permissions permissions = rolePermissions.get(role.getId());
+        if (permissions != null && permissions.version == version) {
+            return permissions.bits;
+        }
+
+        List<RoleAuthority> authorities = new ArrayList<>();
+        role.listAuthorities(authorities);
+        List<ServiceMethod> methods = new ArrayList<>();
+        for (RoleAuthority authority : authorities) {
+            Resource resource = authority.getResource();
+            if (resource instanceof ApplicationResource) {
+                ((ApplicationResource) resource).listServiceMethods(methods);
+            }
+        }
+        BitSet bits = new BitSet();
+        for (ServiceMethod method : methods) {
+            bits.set(methodIndex.indexOf(method.getId()));
+        }
+        bits = trim(bits);
+        if (version == getRoleVersion(role.getId())) {
+            rolePermissions.put(role.getId(), new Permissions(version, bits));
+        }
+        return bits;
+    }
+
+    /**
+     * Forget permissions of the role, and of the users holding it, they're reloaded on next check
+     *
+     * @param roleId
+     */
+    public void invalidateRole(Long roleId) {
+        Assert.notNull(roleId, "Role Id cannot be null");
+
+        roleVersions.put(roleId, versionSequence.incrementAndGet());
+        rolePermissions.invalidate(roleId);
+    }
+
+    /**
+     * Forget permissions of the user in all contexts
+     *
+     * @param userId
+     */
+    public void invalidateUser(Long userId) {
+        ConfigKey prefix = ConfigKey.builder().add(userId).build();
+        userVersion.incrementAndGet();
+        userPermissions.invalidateIf((key, bits) -> key.startsWith(prefix));
+    }
+
+    public void invalidateAll() {
+        allVersion = versionSequence.incrementAndGet();
+        userVersion.incrementAndGet();
+        rolePermissions.invalidateAll();
+        userPermissions.invalidateAll();
+    }
+
+    public ServiceMethodIndex getMethodIndex() {
+        return methodIndex;
+    }
+
+    protected long getRoleVersion(Long roleId) {
+        long all = allVersion;
+        Long version = roleId == null ? null : roleVersions.get(roleId);
+        return version == null || version < all ? all : version;
+    }
+
+    /**
+     * Copy the bit set into words up to its highest set bit
+     */
+    private static BitSet trim(BitSet bits) {
+        return BitSet.valueOf(bits.toLongArray());
+    }
+
+    private final class UserPermissions {
+        final Long[] roleIds;
+
+        final long[] versions;
+
+        final BitSet bits;
+
+        UserPermissions(Long[] roleIds, long[] versions, BitSet bits) {
+            this.roleIds = roleIds;
+            this.versions = versions;
+            this.bits = bits;
+        }
+
+        boolean isCurrent() {
+            for (int i = 0; i < roleIds.length; i++) {
+                if (versions[i] != getRoleVersion(roleIds[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Permissions {
+        final long version;
+
+        final BitSet bits;
+
+        Permissions(long version, BitSet bits) {
+            this.version = version;
+            this.bits = bits;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.security;
+
+import com.tdoer.bedrock.CloudEnvironment;
+import com.tdoer.bedrock.application.Action;
+import com.tdoer.bedrock.application.ApplicationResource;
+import com.tdoer.bedrock.application.Page;
+import com.tdoer.bedrock.cache.ConfigKey;
+import com.tdoer.bedrock.cache.LocalCache;
+import com.tdoer.bedrock.context.ContextConfigCenter;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.PublicAuthority;
+import com.tdoer.bedrock.resource.Resource;
+import com.tdoer.bedrock.service.ServiceMethod;
+import com.tdoer.bedrock.service.ServiceMethodMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Precompiled public routes per (productId, clientId, tenantId, contextPath). The
+ * service methods of resources granted by {@link PublicAuthority}s are compiled into a
+ * {@link ServiceMethodMatcher}, so that a request can be found public before any user or role is
+ * loaded, and skip the authorization.
+ * <p>
+ * Routes come from service methods only: a public {@link Page} makes its own service methods and
+ * those of its current {@link Action}s public, a public {@link Action} or other
+ * {@link ApplicationResource} makes its own service methods public. Client resources, such as
+ * navigations, have no service method, so they add no route.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class PublicRouteRegistry {
+
+    private final static Logger logger = LoggerFactory.getLogger(PublicRouteRegistry.class);
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    private final ContextConfigCenter contextConfigCenter;
+
+    private final LocalCache<ConfigKey, ServiceMethodMatcher> matchers;
+
+    public PublicRouteRegistry(ContextConfigCenter contextConfigCenter) {
+        this(contextConfigCenter, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public PublicRouteRegistry(ContextConfigCenter contextConfigCenter, int maximumSize, long ttl, TimeUnit unit) {
+        Assert.notNull(contextConfigCenter, "ContextConfigCenter cannot be null");
+
+        this.contextConfigCenter = contextConfigCenter;
+        this.matchers = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Check if the request is public in the environment. Only Ids and context path of the
+     * environment are read, nothing else of it is loaded.
+     *
+     * @param env        Cloud environment
+     * @param httpMethod HTTP method of the request
+     * @param path       Request path
+     * @return true if the request is public
+     */
+    public boolean isPublic(CloudEnvironment env, String httpMethod, String path) {
+        return isPublic(env.getProductId(), env.getClientId(), env.getTenantId(), env.getContextPath(), httpMethod, path);
+    }
+
+    /**
+     * Check if the request is public
+     *
+     * @param productId   Product Id
+     * @param clientId    Client Id
+     * @param tenantId    Tenant Id
+     * @param contextPath Context path
+     * @param httpMethod  HTTP method of the request
+     * @param path        Request path
+     * @return true if the request is public
+     */
+    public boolean isPublic(String productId, String clientId, Long tenantId, ContextPath contextPath, String httpMethod, String path) {
+        return getMatcher(productId, clientId, tenantId, contextPath).matches(httpMethod, path);
+    }
+
+    protected ServiceMethodMatcher getMatcher(String productId, String clientId, Long tenantId, ContextPath contextPath) {
+        ConfigKey.Builder probe = ConfigKey.probe().add(contextPath).add(productId).add(clientId).add(tenantId);
+        ServiceMethodMatcher matcher = matchers.get(probe.probeKey());
+        if (matcher != null) {
+            return matcher;
+        }
+        return matchers.get(probe.build(), key -> {
+            List<PublicAuthority> authorities = new ArrayList<>();
+            contextConfigCenter.listPublicAuthorities(contextPath, productId, clientId, tenantId, authorities);
+            List<ServiceMethod> methods = new ArrayList<>();
+            for (PublicAuthority authority : authorities) {
+                listServiceMethods(authority.getResource(), methods);
+            }
+            // A service method may be reached through more than one public resource
+            Map<Long, ServiceMethod> distinct = new LinkedHashMap<>();
+            for (ServiceMethod method : methods) {
+                distinct.putIfAbsent(method.getId(), method);
+            }
+            logger.debug("Compiled {} public service methods for ({}, {}, {}, {})", distinct.size(), productId, clientId, tenantId, contextPath);
+            return new ServiceMethodMatcher(distinct.values());
+        });
+    }
+
+    /**
+     * List service methods made public by the resource
+     *
+     * @param resource Public resource
+     * @param list     List to add service methods into
+     */
+    protected void listServiceMethods(Resource resource, List<ServiceMethod> list) {
+        if (resource instanceof Page) {
+            Page page = (Page) resource;
+            page.listServiceMethods(list);
+            List<Action> actions = new ArrayList<>();
+            page.listCurrentActions(actions);
+            for (Action action : actions) {
+                action.listServiceMethods(list);
+            }
+        } else if (resource instanceof ApplicationResource) {
+            ((ApplicationResource) resource).listServiceMethods(list);
+        } else if (resource != null) {
+            logger.trace("Public resource {} of {} has no service method", resource.getId(), resource.getCategory());
+        }
+    }
+
+    /**
+     * Forget public routes of the context, they'll be compiled again on next check
+     */
+    public void invalidate(String productId, String clientId, Long tenantId, ContextPath contextPath) {
+        matchers.invalidate(ConfigKey.of(contextPath, productId, clientId, tenantId));
+    }
+
+    public void invalidateAll() {
+        matchers.invalidateAll();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.security;
+
+import com.tdoer.bedrock.cache.ConfigKey;
+import com.tdoer.bedrock.cache.LocalCache;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextRole;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * @Description Shared cache of user roles keyed by (userId, contextPath), it backs
+ * {@link UserDetails#getAuthorities()}.
+ * <p>
+ * Each entry is stamped with the role assignment version when it's resolved, call
+ * {@link #bumpVersion()} whenever roles are assigned or revoked to invalidate all entries at once.
+ * </p>
+ * <p>
+ * {@link UserDetails} created without a cache use the {@link #getDefault() default} one, replace it
+ * with {@link #setDefault(UserAuthoritiesCache)}, or set it to <code>null</code> to resolve roles on
+ * each call.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class UserAuthoritiesCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    private static volatile UserAuthoritiesCache defaultCache = new UserAuthoritiesCache();
+
+    private final LocalCache<ConfigKey, Entry> cache;
+
+    private final AtomicLong version = new AtomicLong();
+
+    public UserAuthoritiesCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public UserAuthoritiesCache(int maximumSize, long ttl, TimeUnit unit) {
+        this.cache = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Default cache used by {@link UserDetails} created without a cache
+     *
+     * @return Default cache, or <code>null</code> if roles are resolved on each call
+     */
+    public static UserAuthoritiesCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Replace the default cache used by {@link UserDetails} created without a cache
+     *
+     * @param cache Default cache, <code>null</code> to resolve roles on each call
+     */
+    public static void setDefault(UserAuthoritiesCache cache) {
+        defaultCache = cache;
+    }
+
+    /**
+     * Current role assignment version
+     *
+     * @return Role assignment version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Increase role assignment version to invalidate all cached roles
+     *
+     * @return New role assignment version
+     */
+    public long bumpVersion() {
+        long ret = version.incrementAndGet();
+        cache.invalidateAll();
+        return ret;
+    }
+
+    /**
+     * Get roles of the user in the context, resolve them if not cached with current version
+     *
+     * @param userId      User Id
+     * @param contextPath Context path
+     * @param resolver    Resolver to list roles of the user into the list
+     * @return Unmodifiable list of the user's roles
+     */
+    public List<ContextRole> getRoles(Long userId, ContextPath contextPath, BiConsumer<Long, List<ContextRole>> resolver) {
+        Assert.notNull(userId, "User Id cannot be null");
+        Assert.notNull(resolver, "Resolver cannot be null");
+
+        ConfigKey.Builder probe = ConfigKey.probe().add(userId).add(contextPath);
+        long current = version.get();
+        Entry entry = cache.get(probe.probeKey());
+        if (entry != null && entry.version == current) {
+            return entry.roles;
+        }
+
+        // Built before resolving, the resolver may probe other caches
+        ConfigKey key = probe.build();
+
+        List<ContextRole> roles = new ArrayList<>();
+        resolver.accept(userId, roles);
+        roles = Collections.unmodifiableList(roles);
+        if (current == version.get()) {
+            cache.put(key, new Entry(current, roles));
+        }
+        return roles;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private static final class Entry {
+        final long version;
+
+        final List<ContextRole> roles;
+
+        Entry(long version, List<ContextRole> roles) {
+            this.version = version;
+            this.roles = roles;
+        }
+    }
+}
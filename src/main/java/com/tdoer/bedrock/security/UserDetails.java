@@ -17,6 +17,7 @@ package com.tdoer.bedrock.security;
 
 import com.tdoer.bedrock.CloudEnvironment;
 import com.tdoer.bedrock.CloudEnvironmentHolder;
+import com.tdoer.bedrock.context.ContextPath;
 import com.tdoer.bedrock.context.ContextRole;
 import com.tdoer.bedrock.tenant.AccountStatus;
 import com.tdoer.bedrock.tenant.BaseUser;
@@ -25,6 +26,8 @@ import org.springframework.security.core.GrantedAuthority;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * @Description
@@ -34,14 +37,41 @@ import java.util.Collection;
 public class UserDetails implements org.springframework.security.core.userdetails.UserDetails {
     protected BaseUser user;
 
+    /**
+     * Cache of roles, {@link UserAuthoritiesCache#getDefault()} is used if it's not set, it's not
+     * serialized either.
+     */
+    private transient UserAuthoritiesCache authoritiesCache;
+
+    /**
+     * Roles resolved last time, they're reused until the context path or role assignment version changes
+     */
+    private transient volatile ResolvedRoles resolvedRoles;
+
     private UserDetails() {
         // for persistence only
     }
 
+    /**
+     * Create user details whose roles are cached in {@link UserAuthoritiesCache#getDefault()}
+     *
+     * @param user User
+     */
     public UserDetails(BaseUser user) {
         this.user = user;
     }
 
+    /**
+     * Create user details whose roles are cached in the given cache
+     *
+     * @param user             User
+     * @param authoritiesCache Cache of roles, {@link UserAuthoritiesCache#getDefault()} is used if it's <code>null</code>
+     */
+    public UserDetails(BaseUser user, UserAuthoritiesCache authoritiesCache) {
+        this.user = user;
+        this.authoritiesCache = authoritiesCache;
+    }
+
     /**
      * Returns the authorities granted to the user. Cannot return <code>null</code>.
      *
@@ -51,9 +81,25 @@ public class UserDetails implements org.springframework.security.core.userdetail
     @com.fasterxml.jackson.annotation.JsonIgnore
     public Collection<? extends GrantedAuthority> getAuthorities() {
         CloudEnvironment env = CloudEnvironmentHolder.getEnvironment();
-        ArrayList<ContextRole> roles = new ArrayList<>();
-        env.getContextConfig().listUserRoles(user.getId(), roles);
+        UserAuthoritiesCache cache = authoritiesCache;
+        if (cache == null) {
+            cache = UserAuthoritiesCache.getDefault();
+        }
+        if (cache == null) {
+            ArrayList<ContextRole> roles = new ArrayList<>();
+            env.getContextConfig().listUserRoles(user.getId(), roles);
+            return roles;
+        }
+
+        ContextPath contextPath = env.getContextPath();
+        long version = cache.getVersion();
+        ResolvedRoles resolved = resolvedRoles;
+        if (resolved != null && resolved.version == version && Objects.equals(resolved.contextPath, contextPath)) {
+            return resolved.roles;
+        }
 
+        List<ContextRole> roles = cache.getRoles(user.getId(), contextPath, env.getContextConfig()::listUserRoles);
+        resolvedRoles = new ResolvedRoles(contextPath, version, roles);
         return roles;
     }
 
@@ -126,4 +172,18 @@ public class UserDetails implements org.springframework.security.core.userdetail
     public BaseUser getUser() {
         return user;
     }
+
+    private static final class ResolvedRoles {
+        final ContextPath contextPath;
+
+        final long version;
+
+        final List<ContextRole> roles;
+
+        ResolvedRoles(ContextPath contextPath, long version, List<ContextRole> roles) {
+            this.contextPath = contextPath;
+            this.version = version;
+            this.roles = roles;
+        }
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.service;
+
+import org.springframework.util.Assert;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description Assigns each service method a dense integer index, starting at 0, so that sets
+ * of service methods can be kept as bit sets. An index once assigned never changes.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ServiceMethodIndex {
+
+    private final Map<Long, Integer> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Get index of the service method, assign one if not yet
+     *
+     * @param methodId Service method Id
+     * @return Index of the service method
+     */
+    public int indexOf(Long methodId) {
+        Assert.notNull(methodId, "Service method Id cannot be null");
+
+        Integer index = indexes.get(methodId);
+        if (index == null) {
+            index = indexes.computeIfAbsent(methodId, k -> next.getAndIncrement());
+        }
+        return index;
+    }
+
+    /**
+     * Get index of the service method without assigning
+     *
+     * @param methodId Service method Id
+     * @return Index of the service method, or -1 if not assigned
+     */
+    public int find(Long methodId) {
+        Integer index = methodId == null ? null : indexes.get(methodId);
+        return index == null ? -1 : index;
+    }
+
+    public int size() {
+        return next.get();
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Description Compiled matcher of request to {@link ServiceMethod}. Service methods are bucketed
+ * by HTTP method, and the URI of each is compiled into a tree of path segments, where a segment
+ * is a literal, a template variable like <code>{id}</code>, a <code>*</code> matching one segment,
+ * or a <code>**</code> matching zero or more segments. So a match walks only the segments of the
+ * request path, however many service methods there are.
+ * <p>
+ * The tree only narrows down candidates, it is looser than Ant-style path matching: it skips
+ * empty segments of both the URI and the request path, and lets <code>*</code> and variables match
+ * an empty trailing segment. Whether a candidate matches is always decided by its own
+ * {@link ServiceMethod#match(String, String)}, so the matcher agrees with checking every service
+ * method one by one, as long as literal segments are matched case-sensitively. Service methods of URIs the tree cannot hold, say,
+ * <code>/files/{name}.json</code> or <code>/files/a?c</code>, are candidates of every request of
+ * their HTTP method.
+ * </p>
+ * <p>
+ * When a request path matches more than one service method, compiled or not, the most specific
+ * one wins: the one of fewer <code>**</code>, then of fewer variables and wildcards, then of more
+ * literal characters, so <code>/users/me</code> beats <code>/users/{id}</code>, and
+ * <code>/files/{name}.json</code> beats <code>/files/{id}</code>. Service methods of the same
+ * specificity are taken in the order given, so of service methods sharing a URI pattern and HTTP
+ * method, say, <code>GET /health</code> of two services, the first one accepting the request wins.
+ * A service method given more than once, by the same Id, is compiled once.
+ * </p>
+ * <p>
+ * The compiled tree is immutable, {@link #rebuild(Collection)} compiles a new one and publishes
+ * it atomically when service methods change.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ServiceMethodMatcher {
+
+    private final static Logger logger = LoggerFactory.getLogger(ServiceMethodMatcher.class);
+
+    private static final HttpMethod[] HTTP_METHODS = HttpMethod.values();
+
+    private static final Candidate[] NO_CANDIDATES = new Candidate[0];
+
+    private volatile Compiled compiled = new Compiled(Collections.emptyList());
+
+    public ServiceMethodMatcher() {
+    }
+
+    public ServiceMethodMatcher(Collection<? extends ServiceMethod> serviceMethods) {
+        rebuild(serviceMethods);
+    }
+
+    /**
+     * Compile the service methods and replace the current ones
+     *
+     * @param serviceMethods Service methods, the ones without URI are ignored
+     */
+    public void rebuild(Collection<? extends ServiceMethod> serviceMethods) {
+        Assert.notNull(serviceMethods, "Service methods cannot be null");
+
+        this.compiled = new Compiled(serviceMethods);
+        logger.debug("Compiled {} service methods", serviceMethods.size());
+    }
+
+    /**
+     * Find the most specific service method matching the request
+     *
+     * @param httpMethod HTTP method of the request
+     * @param path       Request path, the query string is ignored by the tree but passed on to
+     *                   {@link ServiceMethod#match(String, String)}
+     * @return The matched service method, or {@code null} if not found
+     */
+    public ServiceMethod match(String httpMethod, String path) {
+        if (httpMethod == null || path == null) {
+            return null;
+        }
+        HttpMethod method = HttpMethod.resolve(httpMethod);
+        if (method == null) {
+            return null;
+        }
+        Compiled c = compiled;
+        int end = path.indexOf('?');
+        if (end < 0) {
+            end = path.length();
+        }
+        Best best = new Best(httpMethod, path);
+        matchNode(c.roots[method.ordinal()], path, skipSlashes(path, 0, end), end, best);
+        for (Candidate candidate : c.uncompiled[method.ordinal()]) {
+            best.offer(candidate);
+        }
+        return best.candidate == null ? null : best.candidate.method;
+    }
+
+    /**
+     * Check if any service method matches the request
+     */
+    public boolean matches(String httpMethod, String path) {
+        return match(httpMethod, path) != null;
+    }
+
+    private static void matchNode(Node node, String path, int pos, int end, Best best) {
+        if (node == null) {
+            return;
+        }
+        if (pos >= end) {
+            matchEnd(node, best);
+            return;
+        }
+
+        int segmentEnd = nextSlash(path, pos, end);
+        int next = skipSlashes(path, segmentEnd, end);
+
+        if (node.literals != null) {
+            matchNode(node.literals.get(path.substring(pos, segmentEnd)), path, next, end, best);
+        }
+        matchNode(node.anySegment, path, next, end, best);
+        if (node.anySegments != null) {
+            // Let "**" take 0, 1, 2 ... segments
+            for (int p = pos; ; p = skipSlashes(path, nextSlash(path, p, end), end)) {
+                matchNode(node.anySegments, path, p, end, best);
+                if (p >= end) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Offer candidates at the end of the request path, "*", variables and "**" may match nothing
+     */
+    private static void matchEnd(Node node, Best best) {
+        for (Candidate candidate : node.candidates) {
+            best.offer(candidate);
+        }
+        if (node.anySegment != null) {
+            matchEnd(node.anySegment, best);
+        }
+        if (node.anySegments != null) {
+            matchEnd(node.anySegments, best);
+        }
+    }
+
+    private static int nextSlash(String path, int pos, int end) {
+        int i = path.indexOf('/', pos);
+        return i < 0 || i > end ? end : i;
+    }
+
+    private static int skipSlashes(String path, int pos, int end) {
+        while (pos < end && path.charAt(pos) == '/') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * The most specific candidate matched so far
+     */
+    private static final class Best {
+        final String httpMethod;
+
+        final String path;
+
+        Candidate candidate;
+
+        Best(String httpMethod, String path) {
+            this.httpMethod = httpMethod;
+            this.path = path;
+        }
+
+        void offer(Candidate c) {
+            if ((candidate == null || c.precedes(candidate)) && c.method.match(httpMethod, path)) {
+                candidate = c;
+            }
+        }
+    }
+
+    private static final class Candidate {
+        private static final long MAX_COUNT = (1L << 21) - 1;
+
+        final ServiceMethod method;
+
+        /**
+         * Specificity of the URI, the smaller the more specific
+         */
+        final long specificity;
+
+        /**
+         * Order of the service method given to {@link #rebuild(Collection)}
+         */
+        final int order;
+
+        Candidate(ServiceMethod method, int order) {
+            this.method = method;
+            this.specificity = specificityOf(method.getURI());
+            this.order = order;
+        }
+
+        boolean precedes(Candidate other) {
+            return specificity < other.specificity || (specificity == other.specificity && order < other.order);
+        }
+
+        /**
+         * Pack the count of "**", the count of variables and wildcards, and the count of literal
+         * characters of the URI into a number, ordered by the significance
+         */
+        private static long specificityOf(String uri) {
+            long doubleWildcards = 0, patterns = 0, literals = 0;
+            for (int i = 0; i < uri.length(); i++) {
+                char c = uri.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < uri.length() && uri.charAt(i + 1) == '*') {
+                        doubleWildcards++;
+                        i++;
+                    } else {
+                        patterns++;
+                    }
+                } else if (c == '?') {
+                    patterns++;
+                } else if (c == '{') {
+                    patterns++;
+                    // Skip the variable, its regex may have braces too
+                    for (int depth = 1; depth > 0 && ++i < uri.length(); ) {
+                        char v = uri.charAt(i);
+                        if (v == '{') {
+                            depth++;
+                        } else if (v == '}') {
+                            depth--;
+                        }
+                    }
+                } else if (c != '/') {
+                    literals++;
+                }
+            }
+            return Math.min(doubleWildcards, MAX_COUNT) << 42
+                    | Math.min(patterns, MAX_COUNT) << 21
+                    | (MAX_COUNT - Math.min(literals, MAX_COUNT));
+        }
+    }
+
+    private static final class Node {
+        Map<String, Node> literals;
+
+        /**
+         * Child of "{var}" or "*" segment
+         */
+        Node anySegment;
+
+        /**
+         * Child of "**" segment
+         */
+        Node anySegments;
+
+        /**
+         * Candidates ending at the node, in the order given
+         */
+        Candidate[] candidates = NO_CANDIDATES;
+    }
+
+    private static final class Compiled {
+        final Node[] roots = new Node[HTTP_METHODS.length];
+
+        final Candidate[][] uncompiled = new Candidate[HTTP_METHODS.length][];
+
+        Compiled(Collection<? extends ServiceMethod> serviceMethods) {
+            List<List<Candidate>> fallbacks = new ArrayList<>(HTTP_METHODS.length);
+            List<Set<Object>> compiled = new ArrayList<>(HTTP_METHODS.length);
+            for (int i = 0; i < HTTP_METHODS.length; i++) {
+                fallbacks.add(new ArrayList<>());
+                compiled.add(new HashSet<>());
+            }
+
+            int order = 0;
+            for (ServiceMethod sm : serviceMethods) {
+                String uri = sm.getURI();
+                if (uri == null) {
+                    continue;
+                }
+                Candidate candidate = new Candidate(sm, order++);
+                boolean compilable = isCompilable(uri);
+                // Service method of no HTTP method serves all HTTP methods
+                for (HttpMethod hm : HTTP_METHODS) {
+                    if (sm.getHttpMethod() != null && sm.getHttpMethod() != hm) {
+                        continue;
+                    }
+                    if (!compiled.get(hm.ordinal()).add(sm.getId() != null ? sm.getId() : sm)) {
+                        logger.debug("Service method {} is given more than once: {}", sm.getId(), uri);
+                    } else if (compilable) {
+                        add(hm, candidate);
+                    } else {
+                        fallbacks.get(hm.ordinal()).add(candidate);
+                    }
+                }
+            }
+
+            for (int i = 0; i < HTTP_METHODS.length; i++) {
+                uncompiled[i] = fallbacks.get(i).toArray(NO_CANDIDATES);
+            }
+        }
+
+        private void add(HttpMethod hm, Candidate candidate) {
+            String uri = candidate.method.getURI();
+            int end = uri.length();
+            Node node = roots[hm.ordinal()];
+            if (node == null) {
+                node = roots[hm.ordinal()] = new Node();
+            }
+            int pos = skipSlashes(uri, 0, end);
+            while (pos < end) {
+                int segmentEnd = nextSlash(uri, pos, end);
+                String segment = uri.substring(pos, segmentEnd);
+                Node child;
+                if (segment.equals("**")) {
+                    child = node.anySegments != null ? node.anySegments : (node.anySegments = new Node());
+                } else if (segment.equals("*") || (segment.startsWith("{") && segment.endsWith("}"))) {
+                    child = node.anySegment != null ? node.anySegment : (node.anySegment = new Node());
+                } else {
+                    if (node.literals == null) {
+                        node.literals = new HashMap<>(4);
+                    }
+                    child = node.literals.computeIfAbsent(segment, k -> new Node());
+                }
+                node = child;
+                pos = skipSlashes(uri, segmentEnd, end);
+            }
+            Candidate[] candidates = Arrays.copyOf(node.candidates, node.candidates.length + 1);
+            candidates[candidates.length - 1] = candidate;
+            node.candidates = candidates;
+        }
+
+        /**
+         * Check if every segment of the URI is a literal, "{var}", "*" or "**"
+         */
+        private static boolean isCompilable(String uri) {
+            if (uri.indexOf('?') >= 0) {
+                return false;
+            }
+            int end = uri.length();
+            int pos = skipSlashes(uri, 0, end);
+            while (pos < end) {
+                int segmentEnd = nextSlash(uri, pos, end);
+                boolean whole = (segmentEnd - pos == 1 && uri.charAt(pos) == '*')
+                        || (segmentEnd - pos == 2 && uri.startsWith("**", pos))
+                        || (uri.charAt(pos) == '{' && uri.charAt(segmentEnd - 1) == '}' && uri.indexOf('}', pos) == segmentEnd - 1);
+                if (!whole) {
+                    for (int i = pos; i < segmentEnd; i++) {
+                        char c = uri.charAt(i);
+                        if (c == '*' || c == '{' || c == '}') {
+                            return false;
+                        }
+                    }
+                }
+                pos = skipSlashes(uri, segmentEnd, end);
+            }
+            return true;
+        }
+    }
+}
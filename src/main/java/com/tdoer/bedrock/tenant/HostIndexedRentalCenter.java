@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.tenant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+
+/**
+ * @Description A {@link RentalCenter} which resolves tenant client by request host from an
+ * in-memory {@link TenantClientHostIndex}, and delegates all other lookups to the backend
+ * rental center.
+ * <p>
+ * The index is populated by {@link #indexTenants(Collection)} and kept up to date by
+ * {@link #refreshTenant(Long)} or {@link #removeTenant(Long)} when a tenant adds or removes
+ * hosts. A host missing from the index falls back to the backend once, and the found tenant
+ * client's hosts are indexed.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class HostIndexedRentalCenter implements RentalCenter {
+
+    private final static Logger logger = LoggerFactory.getLogger(HostIndexedRentalCenter.class);
+
+    private final RentalCenter delegate;
+
+    private final TenantClientHostIndex hostIndex;
+
+    public HostIndexedRentalCenter(RentalCenter delegate) {
+        this(delegate, new TenantClientHostIndex());
+    }
+
+    public HostIndexedRentalCenter(RentalCenter delegate, TenantClientHostIndex hostIndex) {
+        Assert.notNull(delegate, "RentalCenter cannot be null");
+        Assert.notNull(hostIndex, "TenantClientHostIndex cannot be null");
+
+        this.delegate = delegate;
+        this.hostIndex = hostIndex;
+    }
+
+    /**
+     * Index hosts of all clients of the tenants
+     *
+     * @param tenantIds
+     */
+    public void indexTenants(Collection<Long> tenantIds) {
+        Assert.notNull(tenantIds, "Tenant Ids cannot be null");
+
+        for (Long tenantId : tenantIds) {
+            refreshTenant(tenantId);
+        }
+        logger.info("Indexed hosts of {} tenants", tenantIds.size());
+    }
+
+    /**
+     * Reload the tenant's clients and their hosts from backend rental center
+     *
+     * @param tenantId
+     */
+    public void refreshTenant(Long tenantId) {
+        Assert.notNull(tenantId, "Tenant Id cannot be null");
+
+        hostIndex.refreshTenant(tenantId, delegate.getTenantClients(tenantId));
+        logger.debug("Refreshed hosts of the tenant: {}", tenantId);
+    }
+
+    public void removeTenant(Long tenantId) {
+        Assert.notNull(tenantId, "Tenant Id cannot be null");
+
+        hostIndex.unregisterTenant(tenantId);
+        logger.debug("Removed hosts of the tenant: {}", tenantId);
+    }
+
+    public TenantClientHostIndex getHostIndex() {
+        return hostIndex;
+    }
+
+    @Override
+    public TenantClient getTenantClient(String host) {
+        TenantClient tenantClient = hostIndex.find(host);
+        if (tenantClient == null) {
+            tenantClient = delegate.getTenantClient(host);
+            if (tenantClient != null) {
+                logger.debug("Host {} is not indexed, indexing hosts of the tenant client: {}", host, tenantClient);
+                hostIndex.register(tenantClient);
+            }
+        }
+        return tenantClient;
+    }
+
+    @Override
+    public Tenant getTenant(String tenantCode) {
+        return delegate.getTenant(tenantCode);
+    }
+
+    @Override
+    public Tenant getTenant(Long tenantId) {
+        return delegate.getTenant(tenantId);
+    }
+
+    @Override
+    public ProductRental getProductRendtal(Long tenantId, String productId) {
+        return delegate.getProductRendtal(tenantId, productId);
+    }
+
+    @Override
+    public ProductRental[] getProductRendtal(Long tenantId) {
+        return delegate.getProductRendtal(tenantId);
+    }
+
+    @Override
+    public TenantClient getTenantClient(Long tenantId, String clientId) {
+        return delegate.getTenantClient(tenantId, clientId);
+    }
+
+    @Override
+    public TenantClient[] getTenantClients(Long tenantId) {
+        return delegate.getTenantClients(tenantId);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.tenant;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description In-memory index from request host to tenant client, built from
+ * {@link TenantClient#listHosts(List)}.
+ * <p>
+ * Exact hosts, say, 'www.tenant.com', are found by one hash lookup. Wildcard hosts, say,
+ * '*.tenant.example.com', are kept in a trie of reversed host labels, and match any host
+ * with one or more labels in front of 'tenant.example.com'. Exact hosts take precedence
+ * over wildcard hosts, and the longest wildcard wins.
+ * </p>
+ * <p>
+ * Lookups never lock. Updates are serialized and applied incrementally per tenant client.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class TenantClientHostIndex {
+
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private final ConcurrentHashMap<String, TenantClient> exactHosts = new ConcurrentHashMap<>();
+
+    private final Node wildcardRoot = new Node();
+
+    /**
+     * tenantId -> (clientId -> registered hosts), used to remove stale hosts
+     */
+    private final Map<Long, Map<String, Set<String>>> registrations = new HashMap<>();
+
+    /**
+     * Find the tenant client serving the host
+     *
+     * @param host Request's server name
+     * @return Tenant client or {@code null} if not found
+     */
+    public TenantClient find(String host) {
+        if (host == null || host.isEmpty()) {
+            return null;
+        }
+        String h = normalize(host);
+
+        TenantClient ret = exactHosts.get(h);
+        if (ret != null) {
+            return ret;
+        }
+
+        // Walk labels from right to left, e.g. 'com', 'example', 'tenant', 'a'
+        Node node = wildcardRoot;
+        int end = h.length();
+        while (end > 0) {
+            int dot = h.lastIndexOf('.', end - 1);
+            // There is at least one label left, so the wildcard of current node matches
+            if (node.wildcard != null) {
+                ret = node.wildcard;
+            }
+            node = node.children.get(h.substring(dot + 1, end));
+            if (node == null) {
+                break;
+            }
+            end = dot;
+        }
+        return ret;
+    }
+
+    /**
+     * Register, or re-register, all hosts of the tenant client. Hosts registered
+     * before but not listed by the tenant client any more will be removed.
+     *
+     * @param tenantClient
+     */
+    public synchronized void register(TenantClient tenantClient) {
+        Assert.notNull(tenantClient, "TenantClient cannot be null");
+
+        List<String> hosts = new ArrayList<>();
+        tenantClient.listHosts(hosts);
+
+        Set<String> newHosts = new HashSet<>();
+        for (String host : hosts) {
+            if (host != null && !host.trim().isEmpty()) {
+                newHosts.add(normalize(host.trim()));
+            }
+        }
+
+        Map<String, Set<String>> clients = registrations.computeIfAbsent(tenantClient.getTenantId(), k -> new HashMap<>());
+        Set<String> oldHosts = clients.put(tenantClient.getClientId(), newHosts);
+        if (oldHosts != null) {
+            for (String host : oldHosts) {
+                if (!newHosts.contains(host)) {
+                    removeHost(host, tenantClient.getTenantId(), tenantClient.getClientId());
+                }
+            }
+        }
+        for (String host : newHosts) {
+            addHost(host, tenantClient);
+        }
+    }
+
+    /**
+     * Remove all hosts of the tenant client
+     *
+     * @param tenantId
+     * @param clientId
+     */
+    public synchronized void unregister(Long tenantId, String clientId) {
+        Map<String, Set<String>> clients = registrations.get(tenantId);
+        if (clients != null) {
+            Set<String> hosts = clients.remove(clientId);
+            if (hosts != null) {
+                hosts.forEach(host -> removeHost(host, tenantId, clientId));
+            }
+            if (clients.isEmpty()) {
+                registrations.remove(tenantId);
+            }
+        }
+    }
+
+    /**
+     * Replace all hosts of the tenant with the hosts of given tenant clients, it's called
+     * when the tenant adds or removes hosts, or clients.
+     *
+     * @param tenantId
+     * @param tenantClients The tenant's all clients now
+     */
+    public synchronized void refreshTenant(Long tenantId, TenantClient[] tenantClients) {
+        Assert.notNull(tenantId, "Tenant Id cannot be null");
+
+        Set<String> current = new HashSet<>();
+        if (tenantClients != null) {
+            for (TenantClient tenantClient : tenantClients) {
+                register(tenantClient);
+                current.add(tenantClient.getClientId());
+            }
+        }
+
+        Map<String, Set<String>> clients = registrations.get(tenantId);
+        if (clients != null) {
+            for (String clientId : new ArrayList<>(clients.keySet())) {
+                if (!current.contains(clientId)) {
+                    unregister(tenantId, clientId);
+                }
+            }
+        }
+    }
+
+    public synchronized void unregisterTenant(Long tenantId) {
+        Map<String, Set<String>> clients = registrations.get(tenantId);
+        if (clients != null) {
+            for (String clientId : new ArrayList<>(clients.keySet())) {
+                unregister(tenantId, clientId);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        exactHosts.clear();
+        wildcardRoot.children.clear();
+        wildcardRoot.wildcard = null;
+        registrations.clear();
+    }
+
+    private void addHost(String host, TenantClient tenantClient) {
+        if (host.startsWith(WILDCARD_PREFIX) || host.equals("*")) {
+            Node node = wildcardRoot;
+            int end = host.length();
+            // Skip the leading '*' label
+            while (end > 1) {
+                int dot = host.lastIndexOf('.', end - 1);
+                node = node.children.computeIfAbsent(host.substring(dot + 1, end), k -> new Node());
+                end = dot;
+            }
+            node.wildcard = tenantClient;
+        } else {
+            exactHosts.put(host, tenantClient);
+        }
+    }
+
+    /**
+     * Remove the host if it's still served by the tenant client, a host moved to another
+     * tenant client meanwhile is kept.
+     */
+    private void removeHost(String host, Long tenantId, String clientId) {
+        if (host.startsWith(WILDCARD_PREFIX) || host.equals("*")) {
+            Node node = wildcardRoot;
+            int end = host.length();
+            while (end > 1 && node != null) {
+                int dot = host.lastIndexOf('.', end - 1);
+                node = node.children.get(host.substring(dot + 1, end));
+                end = dot;
+            }
+            if (node != null && isServedBy(node.wildcard, tenantId, clientId)) {
+                node.wildcard = null;
+            }
+        } else {
+            TenantClient owner = exactHosts.get(host);
+            if (isServedBy(owner, tenantId, clientId)) {
+                exactHosts.remove(host, owner);
+            }
+        }
+    }
+
+    private static boolean isServedBy(TenantClient owner, Long tenantId, String clientId) {
+        return owner != null && Objects.equals(owner.getTenantId(), tenantId) && Objects.equals(owner.getClientId(), clientId);
+    }
+
+    private static String normalize(String host) {
+        String h = host;
+        if (h.endsWith(".")) {
+            h = h.substring(0, h.length() - 1);
+        }
+        return h.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Node {
+        final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+
+        volatile TenantClient wildcard;
+    }
+}
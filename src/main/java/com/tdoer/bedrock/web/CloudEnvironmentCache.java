@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.CloudEnvironment;
+import com.tdoer.bedrock.cache.LocalCache;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Cache of cloud environments built from environment digests, keyed by the
+ * digest string carried in the request, so that an internal request behind the gateway
+ * doesn't need to load tenant, product rental, context instance and application again.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class CloudEnvironmentCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private final LocalCache<String, CloudEnvironment> cache;
+
+    public CloudEnvironmentCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public CloudEnvironmentCache(int maximumSize, long ttl, TimeUnit unit) {
+        this.cache = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Get cached environment of the digest string
+     *
+     * @param digestString
+     * @return Cached environment or {@code null} if absent or expired
+     */
+    public CloudEnvironment get(String digestString) {
+        return cache.get(digestString);
+    }
+
+    public void put(String digestString, CloudEnvironment environment) {
+        Assert.notNull(digestString, "Digest string cannot be null");
+        Assert.notNull(environment, "CloudEnvironment cannot be null");
+
+        cache.put(digestString, environment);
+    }
+
+    /**
+     * Invalidate all cached environments of the tenant, it should be called when the tenant's
+     * rentals, clients, context instances or applications are changed.
+     *
+     * @param tenantId
+     */
+    public void invalidateTenant(Long tenantId) {
+        Assert.notNull(tenantId, "Tenant Id cannot be null");
+
+        cache.invalidateIf((digest, env) -> tenantId.equals(env.getTenantId()));
+    }
+
+    public void invalidate(String digestString) {
+        cache.invalidate(digestString);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
@@ -16,8 +16,9 @@
 package com.tdoer.bedrock.web;
 
 import com.tdoer.bedrock.*;
-import com.tdoer.bedrock.product.ClientConfig;
-import com.tdoer.bedrock.tenant.ProductRental;
+import com.tdoer.bedrock.metrics.EnvironmentMetrics;
+import com.tdoer.bedrock.metrics.EnvironmentStage;
+import com.tdoer.springboot.error.ErrorCodeException;
 import com.tdoer.springboot.util.WebUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,7 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Description
@@ -42,9 +44,49 @@ public class CloudEnvironmentParseFilter implements Filter, InitializingBean {
 
     protected RequestCloudEnvironmentExtractor extractor;
 
+    protected CloudEnvironmentVerifier verifier;
+
+    protected EnvironmentMetrics metrics = EnvironmentMetrics.NOOP;
+
+    protected RateLimitedLogger rejectLogger = new RateLimitedLogger(logger, 10, 1, TimeUnit.SECONDS);
+
     public CloudEnvironmentParseFilter(RequestCloudEnvironmentExtractor extractor) {
+        this(extractor, new CloudEnvironmentVerifier());
+    }
+
+    public CloudEnvironmentParseFilter(RequestCloudEnvironmentExtractor extractor, CloudEnvironmentVerifier verifier) {
         Assert.notNull(extractor, "RequestCloudEnvironmentExtractor cannot be null");
+        Assert.notNull(verifier, "CloudEnvironmentVerifier cannot be null");
         this.extractor = extractor;
+        this.verifier = verifier;
+    }
+
+    /**
+     * Set the metrics to record time spent in parsing, verifying and header writing stages
+     *
+     * @param metrics
+     */
+    public void setMetrics(EnvironmentMetrics metrics) {
+        Assert.notNull(metrics, "EnvironmentMetrics cannot be null");
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the logger of rejected requests
+     *
+     * @param rejectLogger
+     */
+    public void setRejectLogger(RateLimitedLogger rejectLogger) {
+        Assert.notNull(rejectLogger, "RateLimitedLogger cannot be null");
+
+        this.rejectLogger = rejectLogger;
+    }
+
+    private long recordStage(EnvironmentStage stage, int outcome, long start) {
+        long now = System.nanoTime();
+        metrics.recordStage(stage, outcome, now - start);
+        return now;
     }
 
     public void afterPropertiesSet() {
@@ -60,33 +102,61 @@ public class CloudEnvironmentParseFilter implements Filter, InitializingBean {
         CloudEnvironmentHolder.clearEnvironment();
         logger.debug("Cleaned environment before to process request: {}", request.getRequestURL());
 
-        CloudEnvironment environment = null;
+        try {
+            if (prepareEnvironment(request, response)) {
+                // Errors of the downstream chain are not handled here
+                chain.doFilter(request, response);
+            }
+        } finally {
+            logger.debug("Processed request: {}", request.getRequestURL());
+        }
+    }
+
+    /**
+     * Parse, verify and attach the environment of the request, or write the error response
+     *
+     * @return true if the request can go on
+     */
+    private boolean prepareEnvironment(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        CloudEnvironment environment;
+        EnvironmentStage stage = EnvironmentStage.PARSE;
+        long start = System.nanoTime();
         try {
             logger.debug("Parsing cloud environment for the request: {}", request.getRequestURL());
             environment = parseEnvironment(request, response);
             logger.info("Parsed out cloud environment {} for the request: {}", environment, request.getRequestURL());
+            start = recordStage(stage, EnvironmentMetrics.SUCCESS, start);
 
             // Set to environment holder for later use
             CloudEnvironmentHolder.setEnvironment(environment);
             logger.debug("Parsed and attached new environment ({}) for the request: {}", environment, request.getRequestURL());
 
+            stage = EnvironmentStage.VERIFY;
             logger.debug("Verifying cloud environment {} for the request: {}", environment, request.getRequestURL());
             verifyEnvironment(environment);
             logger.debug("Verified cloud environment {} for the request: {}", environment, request.getRequestURL());
+            start = recordStage(stage, EnvironmentMetrics.SUCCESS, start);
 
-
+            stage = EnvironmentStage.RESPONSE_HEADER;
             setResponseHeader(request, response, environment);
-
-            chain.doFilter(request, response);
-
+            recordStage(stage, EnvironmentMetrics.SUCCESS, start);
+            return true;
         } catch (InvalidRequestException ire) {
-            // todo, response error
-            ire.printStackTrace();
+            recordStage(stage, ire.getErrorCode(), start);
+            // Take the permit first, URL and message are built only if the warning is logged
+            if (rejectLogger.isWarnPermitted()) {
+                rejectLogger.getLogger().warn("Rejected invalid request {}: {}", request.getRequestURL(), ire.getMessage());
+            }
+            EnvironmentErrorResponse.of(ire.getErrorCode()).writeTo(response);
+            return false;
         } catch (Throwable t) {
-            // todo, response error
-            t.printStackTrace();
-        } finally {
-            logger.debug("Processed request: {}", request.getRequestURL());
+            int errorCode = t instanceof ErrorCodeException ? ((ErrorCodeException) t).getErrorCode() : BedrockErrorCodes.INTERNAL_SERVER_ERROR;
+            recordStage(stage, errorCode, start);
+            if (rejectLogger.isErrorPermitted()) {
+                rejectLogger.getLogger().error("Failed to process request: {}", request.getRequestURL(), t);
+            }
+            EnvironmentErrorResponse.of(errorCode).writeTo(response);
+            return false;
         }
     }
 
@@ -103,27 +173,7 @@ public class CloudEnvironmentParseFilter implements Filter, InitializingBean {
     }
 
     protected void verifyEnvironment(CloudEnvironment env) {
-        // Check if the product rental is expired
-        ProductRental productRental = env.getProductRental();
-        if (productRental.isActive()) {
-            throw new InvalidRequestException(BedrockErrorCodes.EXPIRED_PRODUCT_RENTAL, productRental.getStartDate(), productRental.getEndDate());
-        }
-
-        // Check if the tenant product supports the context instance
-        ClientConfig clientConfig = env.getClientConfig();
-        if (!clientConfig.supportContext(env.getContextPath())) {
-            throw new InvalidRequestException(BedrockErrorCodes.CONTEXT_INSTANCE_NOT_SUPPORTED_BY_TENANT_CLIENT, env.getContextPath(), env.getTenantId(), env.getClientId());
-        }
-
-        // Check if the tenant product supports the application
-        if (!clientConfig.supportApplication(env.getApplicationId())) {
-            throw new InvalidRequestException(BedrockErrorCodes.APPLICATION_NOT_SUPPORTED_BY_TENANT_CLIENT, env.getApplicationId(), env.getTenantId(), env.getClientId());
-        }
-
-        // Check if the context instance supports the application
-        if (!env.getContextConfig().supportApplication(env.getApplicationId())) {
-            throw new InvalidRequestException(BedrockErrorCodes.APPLICATION_NOT_SUPPORTED_BY_CONTEXT_INSTANCE, env.getApplicationId(), env.getContextPath());
-        }
+        verifier.verify(env);
     }
 
     protected void setResponseHeader(HttpServletRequest request, HttpServletResponse response, CloudEnvironment environment) {
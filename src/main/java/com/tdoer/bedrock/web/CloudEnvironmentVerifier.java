@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+import com.tdoer.bedrock.CloudEnvironment;
+import com.tdoer.bedrock.InvalidRequestException;
+import com.tdoer.bedrock.StacklessInvalidRequestException;
+import com.tdoer.bedrock.product.ClientConfig;
+import com.tdoer.bedrock.tenant.ProductRental;
+
+/**
+ * @Description Verifies a parsed cloud environment, that's, the product rental is in service,
+ * and the tenant's client supports the context instance and the application, and the context
+ * instance supports the application. It's shared by the servlet filter and the reactive filter.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class CloudEnvironmentVerifier {
+
+    private VerificationResultCache resultCache;
+
+    /**
+     * Set the cache of verification outcomes, {@code null} to verify configurations of each request.
+     *
+     * @param resultCache
+     */
+    public void setResultCache(VerificationResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public VerificationResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Verify the environment
+     *
+     * @param env Cloud environment
+     * @throws InvalidRequestException if the environment is not valid
+     */
+    public void verify(CloudEnvironment env) {
+        // Check if the product rental is expired, it changes as time goes by, so never cached
+        ProductRental productRental = env.getProductRental();
+        if (productRental.isActive()) {
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.EXPIRED_PRODUCT_RENTAL, productRental.getStartDate(), productRental.getEndDate());
+        }
+
+        int errorCode;
+        if (resultCache == null) {
+            errorCode = verifyConfiguration(env);
+        } else {
+            errorCode = resultCache.get(env.getTenantId(), env.getClientId(), env.getContextPath(), env.getApplicationId());
+            if (errorCode < 0) {
+                long version = resultCache.getVersion();
+                errorCode = verifyConfiguration(env);
+                resultCache.put(env.getTenantId(), env.getClientId(), env.getContextPath(), env.getApplicationId(), version, errorCode);
+            }
+        }
+
+        switch (errorCode) {
+            case VerificationResultCache.PASSED:
+                return;
+            case BedrockErrorCodes.CONTEXT_INSTANCE_NOT_SUPPORTED_BY_TENANT_CLIENT:
+                throw new StacklessInvalidRequestException(errorCode, env.getContextPath(), env.getTenantId(), env.getClientId());
+            case BedrockErrorCodes.APPLICATION_NOT_SUPPORTED_BY_TENANT_CLIENT:
+                throw new StacklessInvalidRequestException(errorCode, env.getApplicationId(), env.getTenantId(), env.getClientId());
+            case BedrockErrorCodes.APPLICATION_NOT_SUPPORTED_BY_CONTEXT_INSTANCE:
+                throw new StacklessInvalidRequestException(errorCode, env.getApplicationId(), env.getContextPath());
+            default:
+                throw new StacklessInvalidRequestException(errorCode);
+        }
+    }
+
+    /**
+     * Verify client and context configurations of the environment
+     *
+     * @param env Cloud environment
+     * @return {@link VerificationResultCache#PASSED} or error code of the failed check
+     */
+    protected int verifyConfiguration(CloudEnvironment env) {
+        // Check if the tenant product supports the context instance
+        ClientConfig clientConfig = env.getClientConfig();
+        if (!clientConfig.supportContext(env.getContextPath())) {
+            return BedrockErrorCodes.CONTEXT_INSTANCE_NOT_SUPPORTED_BY_TENANT_CLIENT;
+        }
+
+        // Check if the tenant product supports the application
+        if (!clientConfig.supportApplication(env.getApplicationId())) {
+            return BedrockErrorCodes.APPLICATION_NOT_SUPPORTED_BY_TENANT_CLIENT;
+        }
+
+        // Check if the context instance supports the application
+        if (!env.getContextConfig().supportApplication(env.getApplicationId())) {
+            return BedrockErrorCodes.APPLICATION_NOT_SUPPORTED_BY_CONTEXT_INSTANCE;
+        }
+
+        return VerificationResultCache.PASSED;
+    }
+}
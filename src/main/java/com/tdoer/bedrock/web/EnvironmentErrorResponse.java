@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Description Error response of a request rejected by environment resolution. The JSON body,
+ * say, <code>{"code":4001,"error":"NO_TENANT_CLIENT_BY_IDS"}</code>, is rendered once for each
+ * error code defined in {@link BedrockErrorCodes}, so that rejecting a request just copies
+ * bytes out. Client-side error codes (4001 ~ 4200) are responded with status 400, others 500.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public final class EnvironmentErrorResponse {
+
+    public static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    private static final Map<Integer, EnvironmentErrorResponse> RESPONSES = new HashMap<>();
+
+    private static final EnvironmentErrorResponse INTERNAL_SERVER_ERROR =
+            new EnvironmentErrorResponse(BedrockErrorCodes.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR");
+
+    static {
+        for (Field field : BedrockErrorCodes.class.getDeclaredFields()) {
+            if (field.getType() == int.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    int errorCode = field.getInt(null);
+                    RESPONSES.put(errorCode, new EnvironmentErrorResponse(errorCode, field.getName()));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private final int errorCode;
+
+    private final int status;
+
+    private final byte[] body;
+
+    private EnvironmentErrorResponse(int errorCode, String error) {
+        this.errorCode = errorCode;
+        this.status = isClientError(errorCode) ? HttpServletResponse.SC_BAD_REQUEST : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        this.body = ("{\"code\":" + errorCode + ",\"error\":\"" + error + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the pre-rendered response of the error code, the response of
+     * {@link BedrockErrorCodes#INTERNAL_SERVER_ERROR} is returned for unknown error code.
+     *
+     * @param errorCode Error code
+     * @return Error response, never {@code null}
+     */
+    public static EnvironmentErrorResponse of(int errorCode) {
+        EnvironmentErrorResponse response = RESPONSES.get(errorCode);
+        return response != null ? response : INTERNAL_SERVER_ERROR;
+    }
+
+    public static boolean isClientError(int errorCode) {
+        return errorCode >= 4001 && errorCode <= 4200;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Read-only view of the body
+     */
+    public ByteBuffer getBody() {
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write status, content type and body into the response, nothing is written if the
+     * response was committed already.
+     *
+     * @param response Servlet response
+     * @throws IOException
+     */
+    public void writeTo(HttpServletResponse response) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.setStatus(status);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.cache.LocalCache;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Remembers, for a short time, the hosts, (tenantId, clientId) pairs and application
+ * Ids which were looked up but not found, so that repeated requests of unknown subdomains or
+ * random application Ids are rejected in memory without hitting the backend again.
+ * <p>
+ * Entries must be invalidated when a tenant, a tenant client's host or an application is
+ * created, see {@link #onTenantCreated(Long)}, {@link #onHostAdded(String)} and
+ * {@link #onApplicationCreated(String)}.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class NegativeLookupCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 30;
+
+    private final LocalCache<String, Boolean> unknownHosts;
+
+    private final LocalCache<String, Boolean> unknownTenantClients;
+
+    private final LocalCache<String, Boolean> unknownApplications;
+
+    public NegativeLookupCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param maximumSize Maximum size of each kind of unknown keys
+     * @param ttl         How long to remember an unknown key, must be positive
+     * @param unit        Time unit of the ttl
+     */
+    public NegativeLookupCache(int maximumSize, long ttl, TimeUnit unit) {
+        Assert.isTrue(ttl > 0, "TTL must be greater than 0");
+
+        this.unknownHosts = new LocalCache<>(maximumSize, ttl, unit);
+        this.unknownTenantClients = new LocalCache<>(maximumSize, ttl, unit);
+        this.unknownApplications = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    public boolean isUnknownHost(String host) {
+        return host != null && unknownHosts.get(host) != null;
+    }
+
+    public void markUnknownHost(String host) {
+        if (host != null) {
+            unknownHosts.put(host, Boolean.TRUE);
+        }
+    }
+
+    public boolean isUnknownTenantClient(Long tenantId, String clientId) {
+        return tenantId != null && unknownTenantClients.get(tenantClientKey(tenantId, clientId)) != null;
+    }
+
+    /**
+     * Remember the tenant client as unknown, the tenant Id must be parsed from the request
+     * first, so that the entry is found by {@link #onTenantCreated(Long)} however it's written
+     * in the request.
+     */
+    public void markUnknownTenantClient(Long tenantId, String clientId) {
+        if (tenantId != null) {
+            unknownTenantClients.put(tenantClientKey(tenantId, clientId), Boolean.TRUE);
+        }
+    }
+
+    public boolean isUnknownApplication(String applicationId) {
+        return applicationId != null && unknownApplications.get(applicationId) != null;
+    }
+
+    public void markUnknownApplication(String applicationId) {
+        if (applicationId != null) {
+            unknownApplications.put(applicationId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * A new tenant may own any host and its clients, forget all unknown hosts, and unknown
+     * tenant clients of the tenant.
+     *
+     * @param tenantId
+     */
+    public void onTenantCreated(Long tenantId) {
+        Assert.notNull(tenantId, "Tenant Id cannot be null");
+
+        unknownHosts.invalidateAll();
+        String prefix = tenantId + "|";
+        unknownTenantClients.invalidateIf((key, value) -> key.startsWith(prefix));
+    }
+
+    /**
+     * A tenant client is added to an existing tenant
+     *
+     * @param tenantId
+     * @param clientId
+     */
+    public void onTenantClientCreated(Long tenantId, String clientId) {
+        Assert.notNull(tenantId, "Tenant Id cannot be null");
+
+        unknownTenantClients.invalidate(tenantClientKey(tenantId, clientId));
+    }
+
+    public void onHostAdded(String host) {
+        if (host != null) {
+            // A wildcard host covers many hosts
+            if (host.startsWith("*")) {
+                unknownHosts.invalidateAll();
+            } else {
+                unknownHosts.invalidate(host);
+            }
+        }
+    }
+
+    public void onApplicationCreated(String applicationId) {
+        if (applicationId != null) {
+            unknownApplications.invalidate(applicationId);
+        }
+    }
+
+    public void invalidateAll() {
+        unknownHosts.invalidateAll();
+        unknownTenantClients.invalidateAll();
+        unknownApplications.invalidateAll();
+    }
+
+    private static String tenantClientKey(Long tenantId, String clientId) {
+        return tenantId + "|" + clientId;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import org.slf4j.Logger;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description Logs at most a number of messages within each time window, and drops the others.
+ * The count of dropped messages is reported by the first message of the next window. It keeps a
+ * flood of rejected requests from flooding the log.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class RateLimitedLogger {
+
+    private final Logger logger;
+
+    private final int permitsPerWindow;
+
+    private final long windowNanos;
+
+    private final AtomicLong windowStart;
+
+    private final AtomicInteger permits = new AtomicInteger();
+
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public RateLimitedLogger(Logger logger, int permitsPerWindow, long window, TimeUnit unit) {
+        Assert.notNull(logger, "Logger cannot be null");
+        Assert.isTrue(permitsPerWindow > 0, "Permits per window must be positive");
+        Assert.isTrue(window > 0, "Window must be positive");
+        Assert.notNull(unit, "TimeUnit cannot be null");
+
+        this.logger = logger;
+        this.permitsPerWindow = permitsPerWindow;
+        this.windowNanos = unit.toNanos(window);
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    public void warn(String format, Object... args) {
+        if (isWarnPermitted()) {
+            logger.warn(format, args);
+        }
+    }
+
+    public void error(String format, Object... args) {
+        if (isErrorPermitted()) {
+            logger.error(format, args);
+        }
+    }
+
+    /**
+     * Take a permit to log a warning, use it to skip building costly arguments of a message
+     * which would be dropped, and log through {@link #getLogger()} if permitted:
+     * <pre>
+     * if (rejectLogger.isWarnPermitted()) {
+     *     rejectLogger.getLogger().warn("Rejected {}", request.getRequestURL());
+     * }
+     * </pre>
+     *
+     * @return true if the warning can be logged
+     */
+    public boolean isWarnPermitted() {
+        return logger.isWarnEnabled() && tryAcquire();
+    }
+
+    /**
+     * Take a permit to log an error, see {@link #isWarnPermitted()}
+     *
+     * @return true if the error can be logged
+     */
+    public boolean isErrorPermitted() {
+        return logger.isErrorEnabled() && tryAcquire();
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * @return Count of messages dropped in current window so far
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    private boolean tryAcquire() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            permits.set(0);
+            long dropped = suppressed.getAndSet(0);
+            if (dropped > 0) {
+                logger.warn("Suppressed {} log messages in last {} milliseconds", dropped, TimeUnit.NANOSECONDS.toMillis(now - start));
+            }
+        }
+        if (permits.incrementAndGet() <= permitsPerWindow) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+}
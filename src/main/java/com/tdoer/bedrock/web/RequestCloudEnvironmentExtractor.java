@@ -22,6 +22,9 @@ import com.tdoer.bedrock.context.ContextInstance;
 import com.tdoer.bedrock.context.ContextInstanceCenter;
 import com.tdoer.bedrock.context.ContextPath;
 import com.tdoer.bedrock.context.ContextPathParser;
+import com.tdoer.bedrock.context.InvalidContextPathException;
+import com.tdoer.bedrock.metrics.EnvironmentMetrics;
+import com.tdoer.bedrock.metrics.EnvironmentStage;
 import com.tdoer.bedrock.product.ClientConfigCenter;
 import com.tdoer.bedrock.product.ContextInstallation;
 import com.tdoer.bedrock.tenant.ProductRental;
@@ -38,6 +41,13 @@ import org.springframework.util.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @Description
@@ -48,6 +58,11 @@ public class RequestCloudEnvironmentExtractor {
 
     private final static Logger logger = LoggerFactory.getLogger(RequestCloudEnvironmentExtractor.class);
 
+    /**
+     * Default deadline in milliseconds to resolve an environment concurrently
+     */
+    public static final long DEFAULT_RESOLUTION_TIMEOUT = 3000;
+
     private ContextInstanceCenter contextInstanceCenter;
 
     private RentalCenter rentalCenter;
@@ -58,6 +73,18 @@ public class RequestCloudEnvironmentExtractor {
 
     private ClientConfigCenter clientConfigCenter;
 
+    private CloudEnvironmentCache environmentCache;
+
+    private boolean lazyDigestEnvironment;
+
+    private NegativeLookupCache negativeLookupCache;
+
+    private EnvironmentMetrics metrics = EnvironmentMetrics.NOOP;
+
+    private Executor resolutionExecutor;
+
+    private long resolutionTimeout = DEFAULT_RESOLUTION_TIMEOUT;
+
     public void setContextInstanceCenter(ContextInstanceCenter contextInstanceCenter) {
         Assert.notNull(contextInstanceCenter, "ContextInstanceCenter cannot be null");
 
@@ -85,9 +112,114 @@ public class RequestCloudEnvironmentExtractor {
         this.clientConfigCenter = clientConfigCenter;
     }
 
+    /**
+     * Set the cache of environments built from digests, {@code null} to disable caching.
+     *
+     * @param environmentCache
+     */
+    public void setEnvironmentCache(CloudEnvironmentCache environmentCache) {
+        this.environmentCache = environmentCache;
+    }
+
+    public CloudEnvironmentCache getEnvironmentCache() {
+        return environmentCache;
+    }
+
+    /**
+     * Set the metrics to record time spent in each backend lookup
+     *
+     * @param metrics
+     */
+    public void setMetrics(EnvironmentMetrics metrics) {
+        Assert.notNull(metrics, "EnvironmentMetrics cannot be null");
+
+        this.metrics = metrics;
+    }
+
+    public EnvironmentMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the cache of unknown hosts, tenant clients and application Ids, {@code null} to
+     * always look them up in backend.
+     *
+     * @param negativeLookupCache
+     */
+    public void setNegativeLookupCache(NegativeLookupCache negativeLookupCache) {
+        this.negativeLookupCache = negativeLookupCache;
+    }
+
+    public NegativeLookupCache getNegativeLookupCache() {
+        return negativeLookupCache;
+    }
+
+    /**
+     * Whether to build {@link LazyCloudEnvironment} from environment digest, which loads
+     * product rental, context instance, application etc. only when they are accessed.
+     * Default is {@code false}.
+     *
+     * @param lazyDigestEnvironment
+     */
+    public void setLazyDigestEnvironment(boolean lazyDigestEnvironment) {
+        this.lazyDigestEnvironment = lazyDigestEnvironment;
+    }
+
+    public boolean isLazyDigestEnvironment() {
+        return lazyDigestEnvironment;
+    }
+
+    /**
+     * Set the executor to resolve product rental, context instance, context installation and
+     * application concurrently for the requests from public web, {@code null} to resolve them
+     * one after another in request's thread. See {@link #newVirtualThreadExecutor()}.
+     *
+     * @param resolutionExecutor
+     */
+    public void setResolutionExecutor(Executor resolutionExecutor) {
+        this.resolutionExecutor = resolutionExecutor;
+    }
+
+    public Executor getResolutionExecutor() {
+        return resolutionExecutor;
+    }
+
+    /**
+     * Set the deadline in milliseconds for the whole concurrent resolution
+     *
+     * @param resolutionTimeout Timeout in milliseconds, must be positive
+     */
+    public void setResolutionTimeout(long resolutionTimeout) {
+        Assert.isTrue(resolutionTimeout > 0, "Resolution timeout must be greater than 0");
+
+        this.resolutionTimeout = resolutionTimeout;
+    }
+
+    public long getResolutionTimeout() {
+        return resolutionTimeout;
+    }
+
+    /**
+     * Create an executor which starts a virtual thread for each task, it requires JDK 21 or later.
+     *
+     * @return Executor of virtual threads
+     * @throws IllegalStateException if virtual threads are not supported by the running JDK
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not supported by the JDK: " + System.getProperty("java.version"), e);
+        }
+    }
+
+    protected String extractEnvironmentDigestString(HttpServletRequest request) {
+        return WebUtil.findValueFromRequest(request, CloudConstants.ENVIRONMENT_DIGEST);
+    }
+
     protected EnvironmentDigest extractEnvironmentDigest(HttpServletRequest request) {
 
-        String digestString = WebUtil.findValueFromRequest(request, CloudConstants.ENVIRONMENT_DIGEST);
+        String digestString = extractEnvironmentDigestString(request);
         if (digestString != null) {
             return EnvironmentDigest.fromDigestString(digestString);
         }
@@ -102,17 +234,39 @@ public class RequestCloudEnvironmentExtractor {
         String tenantId = WebUtil.findValueFromRequest(request, CloudConstants.TENANT_ID);
         String clientId = WebUtil.findValueFromRequest(request, CloudConstants.CLIENT_ID);
         if (StringUtils.hasText(clientId) && StringUtils.hasText(tenantId)) {
+            Long id = parseTenantId(tenantId);
+            if (id == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, tenantId, clientId);
+            }
+            if (negativeLookupCache != null && negativeLookupCache.isUnknownTenantClient(id, clientId)) {
+                metrics.increment(EnvironmentStage.NEGATIVE_CACHE_HIT, BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS);
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, tenantId, clientId);
+            }
             logger.debug("Loading TenantClient by (tenantId, clientId) - ({}, {})", tenantId, clientId);
-            tenantClient = rentalCenter.getTenantClient(Long.parseLong(tenantId), clientId);
+            long start = System.nanoTime();
+            tenantClient = rentalCenter.getTenantClient(id, clientId);
+            recordLookup(EnvironmentStage.TENANT_CLIENT_LOOKUP, start, tenantClient, BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS);
             if (tenantClient == null) {
-                throw new InvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, tenantId, clientId);
+                if (negativeLookupCache != null) {
+                    negativeLookupCache.markUnknownTenantClient(id, clientId);
+                }
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, tenantId, clientId);
             }
         } else {
             String host = request.getServerName();
+            if (negativeLookupCache != null && negativeLookupCache.isUnknownHost(host)) {
+                metrics.increment(EnvironmentStage.NEGATIVE_CACHE_HIT, BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST);
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, host);
+            }
             logger.debug("Loading TenantClient by request's provider name: {}", host);
+            long start = System.nanoTime();
             tenantClient = rentalCenter.getTenantClient(host);
+            recordLookup(EnvironmentStage.TENANT_CLIENT_LOOKUP, start, tenantClient, BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST);
             if (tenantClient == null) {
-                throw new InvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, host);
+                if (negativeLookupCache != null) {
+                    negativeLookupCache.markUnknownHost(host);
+                }
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, host);
             }
         }
 
@@ -121,21 +275,94 @@ public class RequestCloudEnvironmentExtractor {
         return tenantClient;
     }
 
+    /**
+     * Parse tenant Id of the request, so that "007" and "7" are the same tenant
+     *
+     * @return Tenant Id, or {@code null} if it's not a number
+     */
+    private static Long parseTenantId(String tenantId) {
+        try {
+            return Long.parseLong(tenantId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Load application of the Id, unknown application Ids are remembered by the negative
+     * lookup cache if any.
+     *
+     * @param appId
+     * @return Application or {@code null} if not found
+     */
+    protected Application loadApplication(String appId) {
+        if (negativeLookupCache != null && negativeLookupCache.isUnknownApplication(appId)) {
+            metrics.increment(EnvironmentStage.NEGATIVE_CACHE_HIT, BedrockErrorCodes.UNKNOWN_APPLICATION_ID);
+            return null;
+        }
+        long start = System.nanoTime();
+        Application application = applicationRepository.getApplication(appId);
+        recordLookup(EnvironmentStage.APPLICATION_LOOKUP, start, application, BedrockErrorCodes.UNKNOWN_APPLICATION_ID);
+        if (application == null && negativeLookupCache != null) {
+            negativeLookupCache.markUnknownApplication(appId);
+        }
+        return application;
+    }
+
+    protected ProductRental loadProductRental(Long tenantId, String productId) {
+        long start = System.nanoTime();
+        ProductRental productRental = rentalCenter.getProductRendtal(tenantId, productId);
+        recordLookup(EnvironmentStage.PRODUCT_RENTAL_LOOKUP, start, productRental, BedrockErrorCodes.NO_PRODUCT_RENTAL);
+        return productRental;
+    }
+
+    protected ContextInstance loadContextInstance(ContextPath contextPath) {
+        long start = System.nanoTime();
+        ContextInstance contextInstance = contextInstanceCenter.getContextInstance(contextPath);
+        recordLookup(EnvironmentStage.CONTEXT_INSTANCE_LOOKUP, start, contextInstance, BedrockErrorCodes.NO_CONTEXT_INSTANCE);
+        return contextInstance;
+    }
+
+    protected ContextInstallation loadContextInstallation(ContextPath contextPath, String productId, String clientId, Long tenantId) {
+        long start = System.nanoTime();
+        ContextInstallation ci = clientConfigCenter.getContextInstallation(contextPath, productId, clientId, tenantId);
+        recordLookup(EnvironmentStage.CONTEXT_INSTALLATION_LOOKUP, start, ci, BedrockErrorCodes.INTERNAL_SERVER_ERROR);
+        return ci;
+    }
+
+    private void recordLookup(EnvironmentStage stage, long start, Object found, int notFoundCode) {
+        metrics.recordStage(stage, found != null ? EnvironmentMetrics.SUCCESS : notFoundCode, System.nanoTime() - start);
+    }
+
     protected ContextPath extractContextPath(HttpServletRequest request) {
         String cp = WebUtil.findValueFromRequest(request, CloudConstants.CONTEXT_PATH_PARAM);
         logger.debug("Found context path: {}", cp);
         if (StringUtils.hasText(cp)) {
-            return contextPathParser.parse(cp);
+            return parseContextPath(cp);
         }
         return null;
     }
 
+    /**
+     * Parse the context path, a malformed one is an invalid request
+     *
+     * @param contextPath Context path value
+     * @return Context path
+     */
+    protected ContextPath parseContextPath(String contextPath) {
+        try {
+            return contextPathParser.parse(contextPath);
+        } catch (InvalidContextPathException e) {
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.MALFORMED_CONTEXT_PATH, e, contextPath, e.getPosition());
+        }
+    }
+
     public CloudEnvironment extract(HttpServletRequest request) {
         CloudEnvironment ret = null;
         // Request from internal provider after zuul
-        EnvironmentDigest digest = extractEnvironmentDigest(request);
-        if (digest != null) {
-            ret = buildFromDigest(digest);
+        String digestString = extractEnvironmentDigestString(request);
+        if (digestString != null) {
+            ret = buildFromDigest(digestString);
         } else {
             // Request from public web (browser or app etc.)
             ret = buildFromRequest(request);
@@ -144,11 +371,15 @@ public class RequestCloudEnvironmentExtractor {
     }
 
     protected CloudEnvironment buildFromRequest(HttpServletRequest request) {
+        if (resolutionExecutor != null) {
+            return buildFromRequestConcurrently(request);
+        }
+
         try {
             TenantClient tenantClient = extractTenantClient(request);
-            ProductRental productRental = rentalCenter.getProductRendtal(tenantClient.getTenant().getId(), tenantClient.getClient().getProduct().getId());
+            ProductRental productRental = loadProductRental(tenantClient.getTenant().getId(), tenantClient.getClient().getProduct().getId());
             if (productRental == null) {
-                throw new InvalidRequestException(BedrockErrorCodes.NO_PRODUCT_RENTAL, tenantClient.getTenant().getId(), tenantClient.getClient().getProduct().getId());
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_PRODUCT_RENTAL, tenantClient.getTenant().getId(), tenantClient.getClient().getProduct().getId());
             }
 
             ContextInstance contextInstance = null;
@@ -158,12 +389,12 @@ public class RequestCloudEnvironmentExtractor {
                 contextInstance = tenant;
                 logger.debug("No context path extracted from request, use tenant as default context instance: {}", contextInstance);
             } else {
-                contextInstance = contextInstanceCenter.getContextInstance(contextPath);
+                contextInstance = loadContextInstance(contextPath);
                 if (contextInstance == null) {
-                    throw new InvalidRequestException(BedrockErrorCodes.NO_CONTEXT_INSTANCE, contextPath);
+                    throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_CONTEXT_INSTANCE, contextPath);
                 }
                 if (!contextInstance.getContextPath().equals(contextPath)) {
-                    throw new InvalidRequestException(BedrockErrorCodes.ILLEGAL_CONTEXT_PATH, contextPath);
+                    throw new StacklessInvalidRequestException(BedrockErrorCodes.ILLEGAL_CONTEXT_PATH, contextPath);
                 }
             }
 
@@ -172,19 +403,19 @@ public class RequestCloudEnvironmentExtractor {
             String appId = WebUtil.findValueFromRequest(request, CloudConstants.APPLICATION_ID_PARAM);
             if (!StringUtils.hasText(appId)) {
                 logger.debug("No application Id found in request: {}", request.getRequestURL());
-                ci = clientConfigCenter.getContextInstallation(contextPath, productRental.getProduct().getId(), tenantClient.getClient().getId(), tenant.getId());
+                ci = loadContextInstallation(contextPath, productRental.getProduct().getId(), tenantClient.getClient().getId(), tenant.getId());
                 appId = ci.getEntryApplicationId();
                 logger.debug("Use default application Id ({}) in client's context installation {}", appId, ci);
             }
 
-            application = applicationRepository.getApplication(appId);
+            application = loadApplication(appId);
             if (application == null) {
-                throw new InvalidRequestException(BedrockErrorCodes.UNKNOWN_APPLICATION_ID, appId);
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.UNKNOWN_APPLICATION_ID, appId);
             }
 
             Locale language = null;
             if (ci == null) {
-                ci = clientConfigCenter.getContextInstallation(contextPath, productRental.getProduct().getId(), tenantClient.getClient().getId(), tenant.getId());
+                ci = loadContextInstallation(contextPath, productRental.getProduct().getId(), tenantClient.getClient().getId(), tenant.getId());
             }
 
             language = ci.getEntryLanguage();
@@ -201,18 +432,157 @@ public class RequestCloudEnvironmentExtractor {
         }
     }
 
+    /**
+     * Resolve the environment like {@link #buildFromRequest(HttpServletRequest)}, but once the
+     * tenant client is found, load product rental, context instance, context installation and
+     * application in parallel on the resolution executor, within the resolution deadline.
+     *
+     * @param request
+     * @return Cloud environment
+     */
+    protected CloudEnvironment buildFromRequestConcurrently(HttpServletRequest request) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resolutionTimeout);
+        CompletableFuture<ProductRental> rentalFuture = null;
+        CompletableFuture<ContextInstance> instanceFuture = null;
+        CompletableFuture<ContextInstallation> installationFuture = null;
+        CompletableFuture<Application> applicationFuture = null;
+        try {
+            // Read everything from request in request's thread
+            TenantClient tenantClient = extractTenantClient(request);
+            ContextPath contextPath = extractContextPath(request);
+            String appId = WebUtil.findValueFromRequest(request, CloudConstants.APPLICATION_ID_PARAM);
+
+            Tenant tenant = tenantClient.getTenant();
+            Long tenantId = tenant.getId();
+            String productId = tenantClient.getClient().getProduct().getId();
+            String clientId = tenantClient.getClient().getId();
+
+            rentalFuture = CompletableFuture.supplyAsync(() -> loadProductRental(tenantId, productId), resolutionExecutor);
+            if (contextPath == null) {
+                logger.debug("No context path extracted from request, use tenant as default context instance: {}", tenant);
+                instanceFuture = CompletableFuture.completedFuture(tenant);
+            } else {
+                instanceFuture = CompletableFuture.supplyAsync(() -> loadContextInstance(contextPath), resolutionExecutor);
+            }
+            installationFuture = CompletableFuture.supplyAsync(() -> loadContextInstallation(contextPath, productId, clientId, tenantId), resolutionExecutor);
+            if (StringUtils.hasText(appId)) {
+                applicationFuture = CompletableFuture.supplyAsync(() -> loadApplication(appId), resolutionExecutor);
+            } else {
+                logger.debug("No application Id found in request: {}", request.getRequestURL());
+                applicationFuture = installationFuture.thenApplyAsync(ci -> {
+                    logger.debug("Use default application Id ({}) in client's context installation {}", ci.getEntryApplicationId(), ci);
+                    return loadApplication(ci.getEntryApplicationId());
+                }, resolutionExecutor);
+            }
+
+            ProductRental productRental = await(rentalFuture, deadline);
+            if (productRental == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_PRODUCT_RENTAL, tenantId, productId);
+            }
+
+            ContextInstance contextInstance = await(instanceFuture, deadline);
+            if (contextPath != null) {
+                if (contextInstance == null) {
+                    throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_CONTEXT_INSTANCE, contextPath);
+                }
+                if (!contextInstance.getContextPath().equals(contextPath)) {
+                    throw new StacklessInvalidRequestException(BedrockErrorCodes.ILLEGAL_CONTEXT_PATH, contextPath);
+                }
+            }
+
+            ContextInstallation ci = await(installationFuture, deadline);
+            Application application = await(applicationFuture, deadline);
+            if (application == null) {
+                throw new StacklessInvalidRequestException(BedrockErrorCodes.UNKNOWN_APPLICATION_ID, StringUtils.hasText(appId) ? appId : ci.getEntryApplicationId());
+            }
+
+            Locale language = ci.getEntryLanguage();
+            if (language == null) {
+                language = Locale.SIMPLIFIED_CHINESE;
+            }
+
+            return new CloudEnvironment(tenant, productRental, tenantClient, contextInstance, application, language);
+
+        } catch (InvalidRequestException | ProviderFailedException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new ErrorCodeException(BedrockErrorCodes.INTERNAL_SERVER_ERROR, t);
+        } finally {
+            cancel(rentalFuture);
+            cancel(instanceFuture);
+            cancel(installationFuture);
+            cancel(applicationFuture);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future, long deadline) throws Throwable {
+        try {
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ProviderFailedException(BedrockErrorCodes.ENV_RESOLUTION_TIMEOUT, e, resolutionTimeout);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private static void cancel(CompletableFuture<?> future) {
+        if (future != null && !future.isDone()) {
+            future.cancel(true);
+        }
+    }
+
+    protected CloudEnvironment buildFromDigest(String digestString) {
+        if (environmentCache != null) {
+            CloudEnvironment cached = environmentCache.get(digestString);
+            if (cached != null) {
+                metrics.increment(EnvironmentStage.ENVIRONMENT_CACHE_HIT, EnvironmentMetrics.SUCCESS);
+                logger.debug("Found cached cloud environment for the digest: {}", digestString);
+                return cached;
+            }
+        }
+
+        EnvironmentDigest digest;
+        try {
+            digest = EnvironmentDigest.fromDigestString(digestString);
+        } catch (RuntimeException e) {
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.INVALID_ENV_DIGEST, e, digestString);
+        }
+
+        CloudEnvironment environment = buildFromDigest(digest);
+        if (environmentCache != null) {
+            environmentCache.put(digestString, environment);
+        }
+        return environment;
+    }
+
     protected CloudEnvironment buildFromDigest(EnvironmentDigest digest) {
         try {
+            if (lazyDigestEnvironment) {
+                Locale language = LocaleUtil.getLocale(digest.getLanguage());
+                return new LazyCloudEnvironment(digest, language, rentalCenter, contextInstanceCenter, applicationRepository, contextPathParser);
+            }
+
+            long start = System.nanoTime();
             TenantClient tenantClient = rentalCenter.getTenantClient(digest.getTenantId(), digest.getClientId());
-            ProductRental productRental = rentalCenter.getProductRendtal(digest.getTenantId(), tenantClient.getClient().getProduct().getId());
+            recordLookup(EnvironmentStage.TENANT_CLIENT_LOOKUP, start, tenantClient, BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS);
+            ProductRental productRental = loadProductRental(digest.getTenantId(), tenantClient.getClient().getProduct().getId());
 
+            start = System.nanoTime();
             Tenant tenant = rentalCenter.getTenant(digest.getTenantId());
-            ContextInstance contextInstance = contextInstanceCenter.getContextInstance(contextPathParser.parse(digest.getContextPath()));
+            recordLookup(EnvironmentStage.TENANT_LOOKUP, start, tenant, BedrockErrorCodes.INVALID_ENV_DIGEST);
+            ContextInstance contextInstance = loadContextInstance(parseContextPath(digest.getContextPath()));
+            start = System.nanoTime();
             Application application = applicationRepository.getApplication(digest.getApplicationId());
+            recordLookup(EnvironmentStage.APPLICATION_LOOKUP, start, application, BedrockErrorCodes.UNKNOWN_APPLICATION_ID);
             Locale language = LocaleUtil.getLocale(digest.getLanguage());
             return new CloudEnvironment(tenant, productRental, tenantClient, contextInstance, application, language);
+        } catch (InvalidRequestException e) {
+            throw e;
         } catch (Throwable t) {
-            throw new InvalidRequestException(BedrockErrorCodes.INVALID_ENV_DIGEST, t, digest.toDigestString());
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.INVALID_ENV_DIGEST, t, digest.toDigestString());
         }
     }
 
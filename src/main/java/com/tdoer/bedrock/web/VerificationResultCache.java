@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.cache.ConfigKey;
+import com.tdoer.bedrock.cache.LocalCache;
+import com.tdoer.bedrock.context.ContextPath;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description Cache of environment verification outcomes keyed by (tenantId, clientId,
+ * contextPath, applicationId). An outcome is either passed, or the error code of the failed
+ * check.
+ * <p>
+ * Outcomes only change when client or context configuration changes, so each outcome is
+ * stamped with the configuration version when it's verified, and {@link #bumpVersion()}
+ * invalidates all outcomes at once.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class VerificationResultCache {
+
+    /**
+     * Outcome of a passed verification
+     */
+    public static final int PASSED = 0;
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    private final LocalCache<ConfigKey, Outcome> cache;
+
+    private final AtomicLong version = new AtomicLong();
+
+    public VerificationResultCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public VerificationResultCache(int maximumSize, long ttl, TimeUnit unit) {
+        this.cache = new LocalCache<>(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Current configuration version, read it before verifying, and put the outcome with it
+     *
+     * @return Configuration version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Increase configuration version to invalidate all verified outcomes, it should be called
+     * whenever client or context configuration changes.
+     *
+     * @return New configuration version
+     */
+    public long bumpVersion() {
+        long ret = version.incrementAndGet();
+        cache.invalidateAll();
+        return ret;
+    }
+
+    /**
+     * Get the verified outcome
+     *
+     * @return {@link #PASSED}, or error code of the failed check, or -1 if not verified
+     * with current configuration version
+     */
+    public int get(Long tenantId, String clientId, ContextPath contextPath, String applicationId) {
+        Outcome outcome = cache.get(ConfigKey.probe().add(tenantId).add(clientId).add(contextPath).add(applicationId).probeKey());
+        if (outcome == null || outcome.version != version.get()) {
+            return -1;
+        }
+        return outcome.errorCode;
+    }
+
+    /**
+     * Put the verified outcome
+     *
+     * @param version   Configuration version read before verifying
+     * @param errorCode {@link #PASSED} or error code of the failed check
+     */
+    public void put(Long tenantId, String clientId, ContextPath contextPath, String applicationId, long version, int errorCode) {
+        if (version == this.version.get()) {
+            cache.put(key(tenantId, clientId, contextPath, applicationId), new Outcome(version, errorCode));
+        }
+    }
+
+    private static ConfigKey key(Long tenantId, String clientId, ContextPath contextPath, String applicationId) {
+        return ConfigKey.builder().add(tenantId).add(clientId).add(contextPath).add(applicationId).build();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private static final class Outcome {
+        final long version;
+
+        final int errorCode;
+
+        Outcome(long version, int errorCode) {
+            this.version = version;
+            this.errorCode = errorCode;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web.reactive;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+import com.tdoer.bedrock.CloudConstants;
+import com.tdoer.bedrock.CloudEnvironment;
+import com.tdoer.bedrock.InvalidRequestException;
+import com.tdoer.bedrock.ReactiveCloudEnvironmentHolder;
+import com.tdoer.bedrock.web.CloudEnvironmentVerifier;
+import com.tdoer.bedrock.web.EnvironmentErrorResponse;
+import com.tdoer.bedrock.web.RateLimitedLogger;
+import com.tdoer.springboot.error.ErrorCodeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Non-blocking counterpart of {@link com.tdoer.bedrock.web.CloudEnvironmentParseFilter}.
+ * The parsed environment is attached to Reactor's subscriber context of the filter chain, use
+ * {@link ReactiveCloudEnvironmentHolder#getEnvironment()} to obtain it.
+ * <p>
+ * {@link CloudEnvironmentVerifier} reads the product rental, and client and context configs on
+ * a cache miss, through blocking getters of the environment, so verification is subscribed on
+ * a scheduler for blocking work, {@link Schedulers#elastic()} by default, instead of the event
+ * loop.
+ * </p>
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class CloudEnvironmentParseWebFilter implements WebFilter {
+
+    private final static Logger logger = LoggerFactory.getLogger(CloudEnvironmentParseWebFilter.class);
+
+    protected ReactiveCloudEnvironmentExtractor extractor;
+
+    protected CloudEnvironmentVerifier verifier;
+
+    protected RateLimitedLogger rejectLogger = new RateLimitedLogger(logger, 10, 1, TimeUnit.SECONDS);
+
+    protected Scheduler verificationScheduler = Schedulers.elastic();
+
+    public CloudEnvironmentParseWebFilter(ReactiveCloudEnvironmentExtractor extractor) {
+        this(extractor, new CloudEnvironmentVerifier());
+    }
+
+    public CloudEnvironmentParseWebFilter(ReactiveCloudEnvironmentExtractor extractor, CloudEnvironmentVerifier verifier) {
+        Assert.notNull(extractor, "ReactiveCloudEnvironmentExtractor cannot be null");
+        Assert.notNull(verifier, "CloudEnvironmentVerifier cannot be null");
+        this.extractor = extractor;
+        this.verifier = verifier;
+    }
+
+    /**
+     * Set the logger of rejected requests
+     *
+     * @param rejectLogger
+     */
+    public void setRejectLogger(RateLimitedLogger rejectLogger) {
+        Assert.notNull(rejectLogger, "RateLimitedLogger cannot be null");
+
+        this.rejectLogger = rejectLogger;
+    }
+
+    /**
+     * Set the scheduler to verify environments on, it must allow blocking
+     *
+     * @param verificationScheduler
+     */
+    public void setVerificationScheduler(Scheduler verificationScheduler) {
+        Assert.notNull(verificationScheduler, "Scheduler cannot be null");
+
+        this.verificationScheduler = verificationScheduler;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        logger.debug("Parsing cloud environment for the request: {}", exchange.getRequest().getURI());
+
+        return extractor.extract(exchange)
+                .flatMap(environment -> Mono.fromCallable(() -> {
+                    logger.debug("Verifying cloud environment {} for the request: {}", environment, exchange.getRequest().getURI());
+                    verifier.verify(environment);
+                    return environment;
+                }).subscribeOn(verificationScheduler))
+                // Errors of the downstream chain are not handled here
+                .onErrorResume(t -> rejectRequest(exchange, t).then(Mono.empty()))
+                .flatMap(environment -> {
+                    setResponseHeader(exchange, environment);
+                    return chain.filter(exchange)
+                            .subscriberContext(ReactiveCloudEnvironmentHolder.withEnvironment(environment));
+                });
+    }
+
+    protected Mono<Void> rejectRequest(ServerWebExchange exchange, Throwable t) {
+        int errorCode;
+        if (t instanceof InvalidRequestException) {
+            errorCode = ((InvalidRequestException) t).getErrorCode();
+            // Take the permit first, the message is built only if the warning is logged
+            if (rejectLogger.isWarnPermitted()) {
+                rejectLogger.getLogger().warn("Rejected invalid request {}: {}", exchange.getRequest().getURI(), t.getMessage());
+            }
+        } else {
+            errorCode = t instanceof ErrorCodeException ? ((ErrorCodeException) t).getErrorCode() : BedrockErrorCodes.INTERNAL_SERVER_ERROR;
+            if (rejectLogger.isErrorPermitted()) {
+                rejectLogger.getLogger().error("Failed to parse cloud environment for the request: {}", exchange.getRequest().getURI(), t);
+            }
+        }
+
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted()) {
+            return response.setComplete();
+        }
+        EnvironmentErrorResponse errorResponse = EnvironmentErrorResponse.of(errorCode);
+        response.setStatusCode(EnvironmentErrorResponse.isClientError(errorResponse.getErrorCode()) ? HttpStatus.BAD_REQUEST : HttpStatus.INTERNAL_SERVER_ERROR);
+        response.getHeaders().set(HttpHeaders.CONTENT_TYPE, EnvironmentErrorResponse.CONTENT_TYPE);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(errorResponse.getBody())));
+    }
+
+    protected void setResponseHeader(ServerWebExchange exchange, CloudEnvironment environment) {
+        String tenantCode = extractor.findValue(exchange, CloudConstants.TENANT_ID);
+        String clientId = extractor.findValue(exchange, CloudConstants.CLIENT_ID);
+
+        if (!StringUtils.hasText(tenantCode) || !StringUtils.hasText(clientId)) {
+            addValueIntoResponseHeaderAndCookie(exchange, CloudConstants.CLIENT_ID, environment.getClient().getId());
+            addValueIntoResponseHeaderAndCookie(exchange, CloudConstants.TENANT_ID, environment.getTenant().getCode());
+        }
+
+        exchange.getAttributes().put(CloudConstants.ENVIRONMENT_DIGEST, environment.getDigest());
+    }
+
+    private void addValueIntoResponseHeaderAndCookie(ServerWebExchange exchange, String name, String value) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().set(name, value);
+        response.addCookie(ResponseCookie.from(name, value).path("/").build());
+    }
+}
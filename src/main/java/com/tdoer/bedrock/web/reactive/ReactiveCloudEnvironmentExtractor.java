@@ -0,0 +1,338 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web.reactive;
+
+import com.tdoer.bedrock.*;
+import com.tdoer.bedrock.application.Application;
+import com.tdoer.bedrock.application.ReactiveApplicationRepository;
+import com.tdoer.bedrock.context.ContextInstance;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextPathParser;
+import com.tdoer.bedrock.context.InvalidContextPathException;
+import com.tdoer.bedrock.context.ReactiveContextInstanceCenter;
+import com.tdoer.bedrock.product.ContextInstallation;
+import com.tdoer.bedrock.product.ReactiveClientConfigCenter;
+import com.tdoer.bedrock.tenant.ProductRental;
+import com.tdoer.bedrock.tenant.ReactiveRentalCenter;
+import com.tdoer.bedrock.tenant.Tenant;
+import com.tdoer.bedrock.tenant.TenantClient;
+import com.tdoer.bedrock.web.CloudEnvironmentCache;
+import com.tdoer.bedrock.web.NegativeLookupCache;
+import com.tdoer.springboot.error.ErrorCodeException;
+import com.tdoer.springboot.util.LocaleUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * @Description Non-blocking counterpart of {@link com.tdoer.bedrock.web.RequestCloudEnvironmentExtractor},
+ * which resolves cloud environment of a <code>ServerWebExchange</code> through reactive rental center,
+ * context instance center, application repository and client config center. Independent lookups
+ * are subscribed at the same time.
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ReactiveCloudEnvironmentExtractor {
+
+    private final static Logger logger = LoggerFactory.getLogger(ReactiveCloudEnvironmentExtractor.class);
+
+    private ReactiveContextInstanceCenter contextInstanceCenter;
+
+    private ReactiveRentalCenter rentalCenter;
+
+    private ReactiveApplicationRepository applicationRepository;
+
+    private ContextPathParser contextPathParser;
+
+    private ReactiveClientConfigCenter clientConfigCenter;
+
+    private CloudEnvironmentCache environmentCache;
+
+    private NegativeLookupCache negativeLookupCache;
+
+    public void setContextInstanceCenter(ReactiveContextInstanceCenter contextInstanceCenter) {
+        Assert.notNull(contextInstanceCenter, "ReactiveContextInstanceCenter cannot be null");
+
+        this.contextInstanceCenter = contextInstanceCenter;
+    }
+
+    public void setRentalCenter(ReactiveRentalCenter rentalCenter) {
+        Assert.notNull(rentalCenter, "ReactiveRentalCenter cannot be null");
+
+        this.rentalCenter = rentalCenter;
+    }
+
+    public void setContextPathParser(ContextPathParser contextPathParser) {
+        Assert.notNull(contextPathParser, "ContextPathParser cannot be null");
+
+        this.contextPathParser = contextPathParser;
+    }
+
+    public void setApplicationRepository(ReactiveApplicationRepository applicationRepository) {
+        Assert.notNull(applicationRepository, "ReactiveApplicationRepository cannot be null");
+
+        this.applicationRepository = applicationRepository;
+    }
+
+    public void setClientConfigCenter(ReactiveClientConfigCenter clientConfigCenter) {
+        Assert.notNull(clientConfigCenter, "ReactiveClientConfigCenter cannot be null");
+
+        this.clientConfigCenter = clientConfigCenter;
+    }
+
+    /**
+     * Set the cache of environments built from digests, {@code null} to disable caching.
+     *
+     * @param environmentCache
+     */
+    public void setEnvironmentCache(CloudEnvironmentCache environmentCache) {
+        this.environmentCache = environmentCache;
+    }
+
+    /**
+     * Set the cache of unknown hosts, tenant clients and application Ids, {@code null} to
+     * always look them up in backend.
+     *
+     * @param negativeLookupCache
+     */
+    public void setNegativeLookupCache(NegativeLookupCache negativeLookupCache) {
+        this.negativeLookupCache = negativeLookupCache;
+    }
+
+    public Mono<CloudEnvironment> extract(ServerWebExchange exchange) {
+        // Request from internal provider after zuul
+        String digestString = findValue(exchange, CloudConstants.ENVIRONMENT_DIGEST);
+        if (digestString != null) {
+            return buildFromDigest(digestString);
+        }
+        // Request from public web (browser or app etc.)
+        return buildFromRequest(exchange);
+    }
+
+    /**
+     * Find value of the name from request's query parameters, headers, or cookies in order
+     *
+     * @param exchange
+     * @param name
+     * @return Value or {@code null} if not found
+     */
+    protected String findValue(ServerWebExchange exchange, String name) {
+        ServerHttpRequest request = exchange.getRequest();
+        String value = request.getQueryParams().getFirst(name);
+        if (value == null) {
+            value = request.getHeaders().getFirst(name);
+        }
+        if (value == null) {
+            HttpCookie cookie = request.getCookies().getFirst(name);
+            if (cookie != null) {
+                value = cookie.getValue();
+            }
+        }
+        return value;
+    }
+
+    protected Mono<TenantClient> extractTenantClient(ServerWebExchange exchange) {
+        String tenantId = findValue(exchange, CloudConstants.TENANT_ID);
+        String clientId = findValue(exchange, CloudConstants.CLIENT_ID);
+        if (StringUtils.hasText(clientId) && StringUtils.hasText(tenantId)) {
+            Long id = parseTenantId(tenantId);
+            if (id == null || (negativeLookupCache != null && negativeLookupCache.isUnknownTenantClient(id, clientId))) {
+                return Mono.error(new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, tenantId, clientId));
+            }
+            logger.debug("Loading TenantClient by (tenantId, clientId) - ({}, {})", tenantId, clientId);
+            return Mono.defer(() -> rentalCenter.getTenantClient(id, clientId))
+                    .switchIfEmpty(absent(() -> {
+                        if (negativeLookupCache != null) {
+                            negativeLookupCache.markUnknownTenantClient(id, clientId);
+                        }
+                        return new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, tenantId, clientId);
+                    }));
+        } else {
+            String host = exchange.getRequest().getURI().getHost();
+            if (host == null) {
+                // Say, a request of HTTP/1.0 without Host header
+                return Mono.error(new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, exchange.getRequest().getURI()));
+            }
+            if (negativeLookupCache != null && negativeLookupCache.isUnknownHost(host)) {
+                return Mono.error(new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, host));
+            }
+            logger.debug("Loading TenantClient by request's provider name: {}", host);
+            return rentalCenter.getTenantClient(host)
+                    .switchIfEmpty(absent(() -> {
+                        if (negativeLookupCache != null) {
+                            negativeLookupCache.markUnknownHost(host);
+                        }
+                        return new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, host);
+                    }));
+        }
+    }
+
+    /**
+     * Parse tenant Id of the request, so that "007" and "7" are the same tenant
+     *
+     * @return Tenant Id, or {@code null} if it's not a number
+     */
+    private static Long parseTenantId(String tenantId) {
+        try {
+            return Long.parseLong(tenantId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    protected ContextPath extractContextPath(ServerWebExchange exchange) {
+        String cp = findValue(exchange, CloudConstants.CONTEXT_PATH_PARAM);
+        logger.debug("Found context path: {}", cp);
+        if (StringUtils.hasText(cp)) {
+            return parseContextPath(cp);
+        }
+        return null;
+    }
+
+    /**
+     * Parse the context path, a malformed one is an invalid request
+     *
+     * @param contextPath Context path value
+     * @return Context path
+     */
+    protected ContextPath parseContextPath(String contextPath) {
+        try {
+            return contextPathParser.parse(contextPath);
+        } catch (InvalidContextPathException e) {
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.MALFORMED_CONTEXT_PATH, e, contextPath, e.getPosition());
+        }
+    }
+
+    protected Mono<CloudEnvironment> buildFromRequest(ServerWebExchange exchange) {
+        return Mono.defer(() -> {
+            ContextPath contextPath = extractContextPath(exchange);
+            String appId = findValue(exchange, CloudConstants.APPLICATION_ID_PARAM);
+
+            return extractTenantClient(exchange).flatMap(tenantClient -> {
+                Tenant tenant = tenantClient.getTenant();
+                Long tenantId = tenant.getId();
+                String productId = tenantClient.getClient().getProduct().getId();
+                String clientId = tenantClient.getClient().getId();
+
+                Mono<ProductRental> productRental = rentalCenter.getProductRental(tenantId, productId)
+                        .switchIfEmpty(absent(() -> new StacklessInvalidRequestException(BedrockErrorCodes.NO_PRODUCT_RENTAL, tenantId, productId)));
+
+                Mono<ContextInstance> contextInstance;
+                if (contextPath == null) {
+                    logger.debug("No context path extracted from request, use tenant as default context instance: {}", tenant);
+                    contextInstance = Mono.just(tenant);
+                } else {
+                    contextInstance = contextInstanceCenter.getContextInstance(contextPath)
+                            .switchIfEmpty(absent(() -> new StacklessInvalidRequestException(BedrockErrorCodes.NO_CONTEXT_INSTANCE, contextPath)))
+                            .flatMap(ci -> ci.getContextPath().equals(contextPath) ? Mono.just(ci)
+                                    : Mono.error(new StacklessInvalidRequestException(BedrockErrorCodes.ILLEGAL_CONTEXT_PATH, contextPath)));
+                }
+
+                Mono<ContextInstallation> installation = clientConfigCenter.getContextInstallation(contextPath, productId, clientId, tenantId)
+                        .switchIfEmpty(absent(() -> new IllegalStateException("No context installation found for (" + contextPath + ", " + productId + ", " + clientId + ", " + tenantId + ")")))
+                        .cache();
+
+                Mono<String> applicationId;
+                if (StringUtils.hasText(appId)) {
+                    applicationId = Mono.just(appId);
+                } else {
+                    logger.debug("No application Id found in request: {}", exchange.getRequest().getURI());
+                    applicationId = installation.map(ContextInstallation::getEntryApplicationId);
+                }
+                Mono<Application> application = applicationId.flatMap(this::loadApplication);
+
+                return Mono.zip(productRental, contextInstance, installation, application).map(t -> {
+                    Locale language = t.getT3().getEntryLanguage();
+                    if (language == null) {
+                        language = Locale.SIMPLIFIED_CHINESE;
+                    }
+                    return new CloudEnvironment(tenant, t.getT1(), tenantClient, t.getT2(), t.getT4(), language);
+                });
+            });
+        }).onErrorMap(t -> !(t instanceof InvalidRequestException), t -> new ErrorCodeException(BedrockErrorCodes.INTERNAL_SERVER_ERROR, t));
+    }
+
+    /**
+     * Load application of the Id, unknown application Ids are remembered by the negative
+     * lookup cache if any.
+     *
+     * @param appId
+     * @return Application, or error {@link BedrockErrorCodes#UNKNOWN_APPLICATION_ID} if not found
+     */
+    protected Mono<Application> loadApplication(String appId) {
+        if (negativeLookupCache != null && negativeLookupCache.isUnknownApplication(appId)) {
+            return Mono.error(new StacklessInvalidRequestException(BedrockErrorCodes.UNKNOWN_APPLICATION_ID, appId));
+        }
+        return applicationRepository.getApplication(appId)
+                .switchIfEmpty(absent(() -> {
+                    if (negativeLookupCache != null) {
+                        negativeLookupCache.markUnknownApplication(appId);
+                    }
+                    return new StacklessInvalidRequestException(BedrockErrorCodes.UNKNOWN_APPLICATION_ID, appId);
+                }));
+    }
+
+    protected Mono<CloudEnvironment> buildFromDigest(String digestString) {
+        if (environmentCache != null) {
+            CloudEnvironment cached = environmentCache.get(digestString);
+            if (cached != null) {
+                logger.debug("Found cached cloud environment for the digest: {}", digestString);
+                return Mono.just(cached);
+            }
+        }
+
+        Mono<CloudEnvironment> environment = Mono.defer(() -> buildFromDigest(EnvironmentDigest.fromDigestString(digestString)))
+                .onErrorMap(t -> !(t instanceof InvalidRequestException), t -> new StacklessInvalidRequestException(BedrockErrorCodes.INVALID_ENV_DIGEST, t, digestString));
+        if (environmentCache != null) {
+            environment = environment.doOnNext(env -> environmentCache.put(digestString, env));
+        }
+        return environment;
+    }
+
+    protected Mono<CloudEnvironment> buildFromDigest(EnvironmentDigest digest) {
+        ContextPath contextPath = parseContextPath(digest.getContextPath());
+        Locale language = LocaleUtil.getLocale(digest.getLanguage());
+
+        return rentalCenter.getTenantClient(digest.getTenantId(), digest.getClientId())
+                .switchIfEmpty(absent(() -> new IllegalStateException("No tenant client found")))
+                .flatMap(tenantClient -> Mono.zip(
+                        rentalCenter.getProductRental(digest.getTenantId(), tenantClient.getClient().getProduct().getId())
+                                .switchIfEmpty(absent(() -> new IllegalStateException("No product rental found"))),
+                        rentalCenter.getTenant(digest.getTenantId())
+                                .switchIfEmpty(absent(() -> new IllegalStateException("No tenant found"))),
+                        contextInstanceCenter.getContextInstance(contextPath)
+                                .switchIfEmpty(absent(() -> new IllegalStateException("No context instance found"))),
+                        applicationRepository.getApplication(digest.getApplicationId())
+                                .switchIfEmpty(absent(() -> new IllegalStateException("No application found")))
+                ).map(t -> new CloudEnvironment(t.getT2(), t.getT1(), tenantClient, t.getT3(), t.getT4(), language)));
+    }
+
+    /**
+     * Signal the error created on subscription, used to turn an empty lookup into an error
+     * without creating the error for found ones.
+     */
+    private static <T> Mono<T> absent(Supplier<? extends Throwable> error) {
+        return Mono.defer(() -> Mono.error(error.get()));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class EnvironmentDigestTest {
+
+    @After
+    public void resetFormat() {
+        EnvironmentDigest.setCompactFormatEnabled(false);
+    }
+
+    @Test
+    public void textFormatIsDefault() {
+        EnvironmentDigest digest = digest("1.100-2.200");
+
+        assertFalse(EnvironmentDigest.isCompactFormatEnabled());
+        assertEquals("42|p1|c1|1.100-2.200|a1|zh_CN", digest.toDigestString());
+    }
+
+    @Test
+    public void compactFormatWhenEnabled() {
+        EnvironmentDigest digest = digest("1.100-2.200");
+        EnvironmentDigest.setCompactFormatEnabled(true);
+
+        assertEquals(digest.toCompactDigestString(), digest.toDigestString());
+        assertEquals(-1, digest.toDigestString().indexOf('|'));
+    }
+
+    @Test
+    public void parseLegacyTextFormat() {
+        EnvironmentDigest digest = EnvironmentDigest.fromDigestString("42|p1|c1|1.100-2.200|a1|zh_CN");
+
+        assertDigest(digest("1.100-2.200"), digest);
+    }
+
+    @Test
+    public void textRoundTrip() {
+        EnvironmentDigest digest = digest("1.100-2.200");
+
+        assertDigest(digest, EnvironmentDigest.fromDigestString(digest.toTextDigestString()));
+    }
+
+    @Test
+    public void compactRoundTrip() {
+        EnvironmentDigest digest = digest("1.100-2.9223372036854775");
+
+        assertDigest(digest, EnvironmentDigest.fromDigestString(digest.toCompactDigestString()));
+    }
+
+    @Test
+    public void compactRoundTripWithNulls() {
+        EnvironmentDigest digest = new EnvironmentDigest();
+        digest.setTenantId(0L);
+        digest.setProductId("p1");
+
+        assertDigest(digest, EnvironmentDigest.fromDigestString(digest.toCompactDigestString()));
+    }
+
+    @Test
+    public void compactRoundTripKeepsLeadingZeros() {
+        String[] paths = {"01.1", "1.01", "1.1-00.2", "0.0-1.0"};
+        for (String path : paths) {
+            EnvironmentDigest digest = digest(path);
+
+            assertEquals(path, EnvironmentDigest.fromDigestString(digest.toCompactDigestString()).getContextPath());
+        }
+    }
+
+    @Test
+    public void compactRoundTripKeepsNonCanonicalPath() {
+        String[] paths = {"1.1-", "1", ".1", "1.x", "1234567890.1", "1.1234567890123456789", "\u4e2d.1"};
+        for (String path : paths) {
+            EnvironmentDigest digest = digest(path);
+
+            assertEquals(path, EnvironmentDigest.fromDigestString(digest.toCompactDigestString()).getContextPath());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectShortTextFormat() {
+        EnvironmentDigest.fromDigestString("42|p1|c1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownCompactVersion() {
+        EnvironmentDigest.fromDigestString("AgA");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTruncatedCompactFormat() {
+        String compact = digest("1.100").toCompactDigestString();
+        EnvironmentDigest.fromDigestString(compact.substring(0, compact.length() - 4));
+    }
+
+    private static EnvironmentDigest digest(String contextPath) {
+        EnvironmentDigest digest = new EnvironmentDigest();
+        digest.setTenantId(42L);
+        digest.setProductId("p1");
+        digest.setClientId("c1");
+        digest.setContextPath(contextPath);
+        digest.setApplicationId("a1");
+        digest.setLanguage("zh_CN");
+        return digest;
+    }
+
+    private static void assertDigest(EnvironmentDigest expected, EnvironmentDigest actual) {
+        assertEquals(expected.getTenantId(), actual.getTenantId());
+        assertEquals(expected.getProductId(), actual.getProductId());
+        assertEquals(expected.getClientId(), actual.getClientId());
+        assertEquals(expected.getContextPath(), actual.getContextPath());
+        assertEquals(expected.getApplicationId(), actual.getApplicationId());
+        assertEquals(expected.getLanguage(), actual.getLanguage());
+    }
+}
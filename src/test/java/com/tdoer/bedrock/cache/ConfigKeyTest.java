@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.cache;
+
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextPathKey;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ConfigKeyTest {
+
+    private static final ContextPath PATH = ContextPath.of(23, 5L, ContextPath.of(22, 1L));
+
+    @Test
+    public void contextPathAndItsKeyAreEqualComponents() {
+        ConfigKey byPath = ConfigKey.builder().add(7L).add(PATH).add("p1").build();
+        ConfigKey byKey = ConfigKey.builder().add(7L).add(ContextPathKey.of(PATH)).add("p1").build();
+
+        assertEquals(byPath, byKey);
+        assertEquals(byPath.hashCode(), byKey.hashCode());
+    }
+
+    @Test
+    public void contextPathKeyRoundTrip() {
+        ContextPathKey key = ContextPathKey.of(PATH);
+
+        assertEquals(2, key.getDepth());
+        assertEquals(22, key.getType(0));
+        assertEquals(5L, key.getInstanceId(1));
+        assertSame(PATH, key.toContextPath());
+        assertEquals("22.1-23.5", key.toString());
+    }
+
+    @Test
+    public void depthSeparatesContextPaths() {
+        ConfigKey a = ConfigKey.builder().add(ContextPath.of(22, 1L)).add(ContextPath.of(23, 5L)).build();
+        ConfigKey b = ConfigKey.builder().add(PATH).build();
+
+        assertNotEquals(a, b);
+    }
+
+    @Test
+    public void nullIsNotAnyNumber() {
+        assertNotEquals(ConfigKey.builder().add((Long) null).build(), ConfigKey.builder().add(Long.MIN_VALUE).build());
+        assertNotEquals(ConfigKey.builder().add((ContextPath) null).build(), ConfigKey.builder().add(Long.MIN_VALUE).build());
+        assertEquals(ConfigKey.builder().add((ContextPath) null).build(), ConfigKey.builder().add((ContextPathKey) null).build());
+    }
+
+    @Test
+    public void startsWith() {
+        ConfigKey key = ConfigKey.builder().add(7L).add(PATH).build();
+
+        assertTrue(key.startsWith(ConfigKey.builder().add(7L).build()));
+        assertFalse(key.startsWith(ConfigKey.builder().add(8L).build()));
+        assertEquals(ConfigKey.of(PATH, "p1", "c1", 1L), ConfigKey.of(PATH, "p1", "c1", 1L));
+    }
+
+    @Test
+    public void orderOfNumbersAndStringsCounts() {
+        assertNotEquals(ConfigKey.builder().add(1L).add("a").build(), ConfigKey.builder().add("a").add(1L).build());
+        assertNotEquals(ConfigKey.builder().add((String) null).add(1L).build(), ConfigKey.builder().add(1L).add((String) null).build());
+        assertNotEquals(ConfigKey.builder().add("a").build(), ConfigKey.builder().add(Long.MIN_VALUE + 2).build());
+    }
+
+    @Test
+    public void probeKeyEqualsBuiltKey() {
+        ConfigKey built = ConfigKey.builder().add(7L).add(PATH).add("p1").build();
+        ConfigKey.Builder probe = ConfigKey.probe().add(7L).add(PATH).add("p1");
+
+        assertEquals(built, probe.probeKey());
+        assertEquals(probe.probeKey(), built);
+        assertEquals(built.hashCode(), probe.probeKey().hashCode());
+        assertEquals(built, probe.build());
+        assertNotSame(probe.probeKey(), probe.build());
+    }
+
+    @Test
+    public void probeIsReusedAndEmptied() {
+        ConfigKey.Builder probe = ConfigKey.probe().add(7L).add("p1");
+        ConfigKey key = probe.probeKey();
+
+        assertSame(probe, ConfigKey.probe());
+        assertSame(key, ConfigKey.probe().add(8L).probeKey());
+        assertEquals(ConfigKey.builder().add(8L).build(), key);
+    }
+}
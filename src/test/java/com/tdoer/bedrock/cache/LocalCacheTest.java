@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.cache;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class LocalCacheTest {
+
+    @Test
+    public void getReturnsPutValue() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 0, TimeUnit.SECONDS);
+        cache.put("a", "1");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void entryExpiresAfterTtl() throws InterruptedException {
+        LocalCache<String, String> cache = new LocalCache<>(10, 50, TimeUnit.MILLISECONDS);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+
+        Thread.sleep(80);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void nonPositiveTtlNeverExpires() throws InterruptedException {
+        LocalCache<String, String> cache = new LocalCache<>(10, 0, TimeUnit.MILLISECONDS);
+        cache.put("a", "1");
+
+        Thread.sleep(20);
+
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void eldestWrittenEntryIsEvictedFirst() {
+        LocalCache<Integer, String> cache = new LocalCache<>(3, 0, TimeUnit.SECONDS);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.put(4, "4");
+
+        assertNull(cache.get(1));
+        assertEquals("2", cache.get(2));
+        assertEquals("4", cache.get(4));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void overwrittenEntryDoesNotEvictItsReplacement() {
+        LocalCache<Integer, String> cache = new LocalCache<>(2, 0, TimeUnit.SECONDS);
+        cache.put(1, "1");
+        cache.put(1, "1'");
+        cache.put(2, "2");
+
+        assertEquals("1'", cache.get(1));
+        assertEquals("2", cache.get(2));
+    }
+
+    @Test
+    public void loaderIsCalledOnMissOnly() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 0, TimeUnit.SECONDS);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("A", cache.get("a", k -> {
+            calls.incrementAndGet();
+            return "A";
+        }));
+        assertEquals("A", cache.get("a", k -> {
+            calls.incrementAndGet();
+            return "B";
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void nullIsNeverCached() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 0, TimeUnit.SECONDS);
+
+        assertNull(cache.get("a", k -> null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateIfRemovesMatchingEntries() {
+        LocalCache<Integer, String> cache = new LocalCache<>(10, 0, TimeUnit.SECONDS);
+        for (int i = 0; i < 6; i++) {
+            cache.put(i, String.valueOf(i));
+        }
+
+        cache.invalidateIf((k, v) -> k % 2 == 0);
+
+        assertNull(cache.get(0));
+        assertEquals("1", cache.get(1));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void invalidateAllReleasesValues() throws InterruptedException {
+        LocalCache<Integer, Object> cache = new LocalCache<>(10, 0, TimeUnit.SECONDS);
+        Object value = new Object();
+        WeakReference<Object> ref = new WeakReference<>(value);
+        cache.put(1, value);
+        value = null;
+
+        cache.invalidateAll();
+        for (int i = 0; i < 20 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull("Invalidated value is still reachable from the cache", ref.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateAllKeepsEvictionAccurate() {
+        LocalCache<Integer, String> cache = new LocalCache<>(2, 0, TimeUnit.SECONDS);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.invalidateAll();
+
+        cache.put(3, "3");
+        cache.put(4, "4");
+
+        assertEquals("3", cache.get(3));
+        assertEquals("4", cache.get(4));
+    }
+}
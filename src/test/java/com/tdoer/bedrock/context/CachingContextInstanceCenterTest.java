@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.tdoer.bedrock.context.IndexedContextInstanceCenterTest.instance;
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class CachingContextInstanceCenterTest {
+
+    private static final ContextPath TENANT = ContextPath.of(22, 1L);
+
+    private static final ContextPath OFFICE = ContextPath.of(23, 1L, TENANT);
+
+    private static final ContextPath TEAM = ContextPath.of(24, 1L, OFFICE);
+
+    private final AtomicInteger backendLookups = new AtomicInteger();
+
+    private CachingContextInstanceCenter center;
+
+    @Before
+    public void setUp() {
+        IndexedContextInstanceCenter backend = new IndexedContextInstanceCenter() {
+            @Override
+            public ContextInstance getContextInstance(ContextPath contextPath) {
+                backendLookups.incrementAndGet();
+                return super.getContextInstance(contextPath);
+            }
+        };
+        backend.load(Arrays.asList(instance(TENANT), instance(OFFICE), instance(TEAM)));
+        center = new CachingContextInstanceCenter(backend);
+    }
+
+    @Test
+    public void ancestorsAreCached() {
+        assertEquals(Arrays.asList(OFFICE, TENANT), ancestors(TEAM));
+        assertEquals(2, backendLookups.get());
+
+        assertEquals(Arrays.asList(OFFICE, TENANT), ancestors(TEAM));
+        assertEquals(Arrays.asList(TENANT), ancestors(OFFICE));
+        assertEquals(2, backendLookups.get());
+    }
+
+    @Test
+    public void partlyCachedAncestorsKeepOrder() {
+        center.getContextInstance(TENANT);
+        backendLookups.set(0);
+
+        assertEquals(Arrays.asList(OFFICE, TENANT), ancestors(TEAM));
+        assertEquals(1, backendLookups.get());
+    }
+
+    private List<ContextPath> ancestors(ContextPath contextPath) {
+        List<ContextInstance> list = new ArrayList<>();
+        center.listAncestors(contextPath, list);
+        return list.stream().map(ContextInstance::getContextPath).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.application.ApplicationInstallation;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextConfigCenterTest {
+
+    private static final ContextPath CONTEXT = ContextPath.of(22, 1L);
+
+    @Test
+    public void listUserRolesInBatch() {
+        RoleCenter center = new RoleCenter();
+        center.assign(1L, 10L, 11L);
+        center.assign(2L, 11L);
+
+        Map<Long, List<ContextRole>> roles = center.listUserRoles(CONTEXT, new long[]{1L, 2L, 3L, 1L});
+
+        assertEquals(3, roles.size());
+        assertEquals(Arrays.asList(10L, 11L), ids(roles.get(1L)));
+        assertEquals(Arrays.asList(11L), ids(roles.get(2L)));
+        assertTrue(roles.get(3L).isEmpty());
+        // Duplicated user Id is resolved once
+        assertEquals(3, center.calls);
+        // Role held by both users is shared by their lists
+        assertSame(roles.get(1L).get(1), roles.get(2L).get(0));
+    }
+
+    @Test
+    public void noUserListsNoRole() {
+        RoleCenter center = new RoleCenter();
+
+        assertTrue(center.listUserRoles(CONTEXT, new long[0]).isEmpty());
+        assertEquals(0, center.calls);
+    }
+
+    private static List<Long> ids(List<ContextRole> roles) {
+        List<Long> ret = new ArrayList<>();
+        for (ContextRole role : roles) {
+            ret.add(role.getId());
+        }
+        return ret;
+    }
+
+    private static ContextRole role(Long id) {
+        return (ContextRole) Proxy.newProxyInstance(ContextRole.class.getClassLoader(), new Class[]{ContextRole.class},
+                (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getId":
+                            return id;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * Center listing a new role instance on each call, as a remote center does
+     */
+    private static class RoleCenter implements ContextConfigCenter {
+
+        private final Map<Long, long[]> assignments = new HashMap<>();
+
+        private int calls;
+
+        void assign(Long userId, long... roleIds) {
+            assignments.put(userId, roleIds);
+        }
+
+        @Override
+        public void listUserRoles(ContextPath contextPath, Long userId, List<ContextRole> list) {
+            calls++;
+            long[] roleIds = assignments.get(userId);
+            if (roleIds != null) {
+                for (long roleId : roleIds) {
+                    list.add(role(roleId));
+                }
+            }
+        }
+
+        @Override
+        public void listPublicAuthorities(ContextPath contextPath, String productId, String clientId, Long tenantId, List<PublicAuthority> list) {
+        }
+
+        @Override
+        public void listContextRoles(ContextPath contextPath, String productId, String clientId, Long tenantId, List<ContextRole> list) {
+        }
+
+        @Override
+        public ContextRole getContextRole(Long roleId, ContextPath contextPath, String productId, String clientId, Long tenantId) {
+            return null;
+        }
+
+        @Override
+        public void listApplicationInstallation(ContextPath contextPath, String productId, String clientId, Long tenantId, List<ApplicationInstallation> list) {
+        }
+
+        @Override
+        public ContextApplicationInstallation getApplicationInstallation(String applicationId, ContextPath contextPath, String productId, String clientId, Long tenantId) {
+            return null;
+        }
+    }
+}
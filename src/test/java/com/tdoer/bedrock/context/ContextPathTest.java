@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextPathTest {
+
+    @Test
+    public void hashOfFieldsMatchesAbsoluteValue() {
+        Long[] ids = {0L, 1L, 9L, 10L, 99L, 100L, 123456789L, -1L, -10L, -123L, Long.MAX_VALUE, Long.MIN_VALUE, null};
+        Integer[] types = {0, 7, 22, -3, Integer.MAX_VALUE, Integer.MIN_VALUE, null};
+        ContextPath parent = new ContextPath(22, 1L);
+        for (Integer type : types) {
+            for (Long id : ids) {
+                assertEquals(new ContextPath(type, id).getAbsoluteValue().hashCode(), ContextPath.hash(null, type, id));
+                assertEquals(new ContextPath(type, id, parent).getAbsoluteValue().hashCode(), ContextPath.hash(parent, type, id));
+            }
+        }
+    }
+
+    @Test
+    public void pathOfMutableClassIsRead() throws Exception {
+        // 22.1-23.1 serialized by the former mutable ContextPath
+        byte[] bytes = Base64.getDecoder().decode("rO0ABXNyACVjb20udGRvZXIuYmVkcm9jay5jb250ZXh0LkNvbnRleHRQYXRombfpMrBUfiMCAANMAAppbnN0YW5jZUlkdAAQTGphdmEvbGFuZy9Mb25nO0wABnBhcmVudHQAJ0xjb20vdGRvZXIvYmVkcm9jay9jb250ZXh0L0NvbnRleHRQYXRoO0wABHR5cGV0ABNMamF2YS9sYW5nL0ludGVnZXI7eHBzcgAOamF2YS5sYW5nLkxvbmc7i+SQzI8j3wIAAUoABXZhbHVleHIAEGphdmEubGFuZy5OdW1iZXKGrJUdC5TgiwIAAHhwAAAAAAAAAAFzcQB+AABxAH4AB3BzcgARamF2YS5sYW5nLkludGVnZXIS4qCk94GHOAIAAUkABXZhbHVleHEAfgAGAAAAFnNxAH4ACQAAABc=");
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            assertSame(ContextPath.of(23, 1L, ContextPath.of(22, 1L)), in.readObject());
+        }
+    }
+
+    @Test
+    public void ofReturnsCanonicalInstance() {
+        ContextPath a = ContextPath.of(23, 1L, ContextPath.of(22, 1L));
+        ContextPath b = ContextPath.of(23, 1L, new ContextPath(22, 1L));
+
+        assertSame(a, b);
+        assertSame(a.getParent(), ContextPath.of(22, 1L));
+        assertEquals("22.1-23.1", a.getAbsoluteValue());
+    }
+
+    @Test
+    public void internReturnsCanonicalInstance() {
+        ContextPath path = new ContextPath(33, 5L, new ContextPath(32, 5L));
+        ContextPath canonical = path.intern();
+
+        assertSame(canonical, canonical.intern());
+        assertSame(canonical, new ContextPath(33, 5L, new ContextPath(32, 5L)).intern());
+        assertSame(canonical, ContextPath.of(33, 5L, ContextPath.of(32, 5L)));
+        assertSame(canonical.getParent(), ContextPath.of(32, 5L));
+    }
+
+    @Test
+    public void equalsIgnoresCanonicality() {
+        ContextPath path = new ContextPath(43, 2L, new ContextPath(42, 2L));
+
+        assertEquals(path, path.intern());
+        assertEquals(path.hashCode(), path.intern().hashCode());
+        assertNotEquals(path, ContextPath.of(43, 2L, ContextPath.of(42, 3L)));
+    }
+
+    @Test
+    public void deserializedPathIsCanonical() throws Exception {
+        ContextPath path = ContextPath.of(53, 1L, ContextPath.of(52, 1L));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(path);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSame(path, in.readObject());
+        }
+    }
+
+    @Test
+    public void unreferencedPathIsReclaimed() throws Exception {
+        WeakReference<ContextPath> ref = new WeakReference<>(ContextPath.of(63, 1234567L));
+
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        // Interned again after reclaimed
+        ContextPath path = ContextPath.of(63, 1234567L);
+        assertSame(path, ContextPath.of(63, 1234567L));
+    }
+
+    @Test
+    public void concurrentInterningAgrees() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ContextPath[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ContextPath[] ret = new ContextPath[100];
+                    for (int i = 0; i < ret.length; i++) {
+                        ret[i] = new ContextPath(73, (long) i, new ContextPath(72, 1L)).intern();
+                    }
+                    return ret;
+                }));
+            }
+            start.countDown();
+            ContextPath[] first = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<ContextPath[]> future : futures) {
+                ContextPath[] paths = future.get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < paths.length; i++) {
+                    assertSame(first[i], paths[i]);
+                    assertSame(first[i], ContextPath.of(73, (long) i, ContextPath.of(72, 1L)));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.tdoer.bedrock.context.IndexedContextInstanceCenterTest.instance;
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextSubtreeSpliteratorTest {
+
+    private static final ContextPath ROOT = ContextPath.of(22, 1L);
+
+    private static final int FAN_OUT = 1000;
+
+    private final AtomicInteger pulled = new AtomicInteger();
+
+    private IndexedContextInstanceCenter center;
+
+    @Before
+    public void setUp() {
+        center = new IndexedContextInstanceCenter() {
+            @Override
+            public Iterator<ContextInstance> iterateChildren(ContextPath contextPath) {
+                Iterator<ContextInstance> children = super.iterateChildren(contextPath);
+                return new Iterator<ContextInstance>() {
+                    @Override
+                    public boolean hasNext() {
+                        return children.hasNext();
+                    }
+
+                    @Override
+                    public ContextInstance next() {
+                        pulled.incrementAndGet();
+                        return children.next();
+                    }
+                };
+            }
+        };
+        List<ContextInstance> instances = new ArrayList<>();
+        instances.add(instance(ROOT));
+        for (long i = 0; i < FAN_OUT; i++) {
+            ContextPath office = ContextPath.of(23, i, ROOT);
+            instances.add(instance(office));
+            instances.add(instance(ContextPath.of(24, 1L, office)));
+        }
+        center.load(instances);
+    }
+
+    @Test
+    public void childrenArePulledInBatches() {
+        Spliterator<ContextInstance> spliterator = new ContextSubtreeSpliterator(center, center.getContextInstance(ROOT));
+        AtomicInteger visited = new AtomicInteger();
+        int maxAhead = 0;
+        while (spliterator.tryAdvance(instance -> visited.incrementAndGet())) {
+            maxAhead = Math.max(maxAhead, pulled.get() + 1 - visited.get());
+        }
+
+        assertEquals(1 + 2 * FAN_OUT, visited.get());
+        assertTrue("Pulled " + maxAhead + " children ahead", maxAhead <= 2 * ContextSubtreeSpliterator.BATCH_SIZE);
+    }
+
+    @Test
+    public void parentsComeBeforeChildren() {
+        List<ContextPath> paths = center.streamSubtree(ROOT).map(ContextInstance::getContextPath).collect(Collectors.toList());
+
+        assertEquals(1 + 2 * FAN_OUT, paths.size());
+        assertEquals(1 + 2 * FAN_OUT, new HashSet<>(paths).size());
+        for (int i = 0; i < paths.size(); i++) {
+            ContextPath parent = paths.get(i).getParentPath();
+            if (parent != null) {
+                assertTrue(paths.indexOf(parent) < i);
+            }
+        }
+    }
+
+    @Test
+    public void estimateShrinksOnSplit() {
+        Spliterator<ContextInstance> spliterator = new ContextSubtreeSpliterator(center, center.getContextInstance(ROOT), center.size());
+        assertEquals(center.size(), spliterator.estimateSize());
+
+        Spliterator<ContextInstance> root = spliterator.trySplit();
+        assertEquals(1, root.estimateSize());
+        assertEquals(center.size() - 1, spliterator.estimateSize());
+
+        long before = spliterator.estimateSize();
+        Spliterator<ContextInstance> half = spliterator.trySplit();
+        assertNotNull(half);
+        assertTrue(half.estimateSize() < before);
+        assertTrue(spliterator.estimateSize() < before);
+        assertEquals(before, half.estimateSize() + spliterator.estimateSize());
+    }
+
+    @Test
+    public void unknownEstimateShrinksOnSplit() {
+        Spliterator<ContextInstance> spliterator = new ContextSubtreeSpliterator(center, center.getContextInstance(ROOT));
+        spliterator.trySplit();
+        spliterator.trySplit();
+
+        assertTrue(spliterator.estimateSize() < Long.MAX_VALUE);
+    }
+
+    @Test
+    public void parallelStreamVisitsAllOnce() {
+        Set<ContextPath> paths = center.streamSubtree(ROOT).parallel().map(ContextInstance::getContextPath).collect(Collectors.toSet());
+        long count = center.streamSubtree(ROOT).parallel().count();
+
+        assertEquals(1 + 2 * FAN_OUT, paths.size());
+        assertEquals(1 + 2 * FAN_OUT, count);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextTypeRegistryTest {
+
+    @Test
+    public void parentsComeFromTheTree() {
+        // The office claims a parent outside the tree, of a type number out of the tree's range
+        TestContextType stray = new TestContextType(999, "stray", null);
+        TestContextType team = new TestContextType(24, "team", null);
+        TestContextType office = new TestContextType(23, "office", stray, team);
+        TestContextType tenant = new TestContextType(22, "tenant", null, office);
+        team.parent = office;
+        ContextTypeRegistry registry = new ContextTypeRegistry(tenant);
+
+        assertSame(tenant, registry.getParent(23));
+        assertSame(office, registry.getParent(24));
+        assertNull(registry.getParent(22));
+        assertEquals(0, registry.getDepth(22));
+        assertEquals(1, registry.getDepth(23));
+        assertEquals(2, registry.getDepth(24));
+        assertTrue(registry.isAncestor(22, 24));
+        assertTrue(registry.isAncestor(23, 24));
+        assertFalse(registry.isAncestor(24, 22));
+        assertSame(team, registry.find("team"));
+        assertNull(registry.find(999));
+    }
+
+    private static class TestContextType implements ContextType {
+        private final Integer type;
+
+        private final String code;
+
+        private final ContextType[] children;
+
+        ContextType parent;
+
+        TestContextType(Integer type, String code, ContextType parent, ContextType... children) {
+            this.type = type;
+            this.code = code;
+            this.parent = parent;
+            this.children = children;
+        }
+
+        @Override
+        public Integer getType() {
+            return type;
+        }
+
+        @Override
+        public String getName() {
+            return code;
+        }
+
+        @Override
+        public String getCode() {
+            return code;
+        }
+
+        @Override
+        public String getCategory() {
+            return null;
+        }
+
+        @Override
+        public ContextType getParent() {
+            return parent;
+        }
+
+        @Override
+        public ContextType[] getChildren() {
+            return children;
+        }
+
+        @Override
+        public ContextType getRoot() {
+            return null;
+        }
+
+        @Override
+        public ContextType find(Integer contextType) {
+            return null;
+        }
+    }
+}
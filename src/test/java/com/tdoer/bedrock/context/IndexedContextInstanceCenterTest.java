@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import com.tdoer.bedrock.tenant.Tenant;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class IndexedContextInstanceCenterTest {
+
+    private static final ContextPath TENANT = ContextPath.of(22, 1L);
+
+    private static final ContextPath OFFICE_A = ContextPath.of(23, 1L, TENANT);
+
+    private static final ContextPath OFFICE_B = ContextPath.of(23, 2L, TENANT);
+
+    private static final ContextPath TEAM_A1 = ContextPath.of(24, 1L, OFFICE_A);
+
+    private IndexedContextInstanceCenter center;
+
+    @Before
+    public void setUp() {
+        center = new IndexedContextInstanceCenter();
+        center.load(Arrays.asList(instance(TEAM_A1), instance(OFFICE_A), instance(OFFICE_B), instance(TENANT)));
+    }
+
+    @Test
+    public void listChildrenAndAncestors() {
+        List<ContextInstance> children = new ArrayList<>();
+        center.listChildren(TENANT, children);
+        assertEquals(paths(OFFICE_A, OFFICE_B), paths(children));
+
+        List<ContextInstance> ancestors = new ArrayList<>();
+        center.listAncestors(TEAM_A1, ancestors);
+        assertEquals(Arrays.asList(OFFICE_A, TENANT), ancestors.stream().map(ContextInstance::getContextPath).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void streamSubtree() {
+        List<ContextPath> subtree = center.streamSubtree(TENANT).map(ContextInstance::getContextPath).collect(Collectors.toList());
+
+        assertEquals(4, subtree.size());
+        assertEquals(TENANT, subtree.get(0));
+        assertTrue(subtree.indexOf(OFFICE_A) < subtree.indexOf(TEAM_A1));
+        assertEquals(0, center.streamSubtree(ContextPath.of(99, 1L)).count());
+    }
+
+    @Test
+    public void subtreeSizeIsCounted() {
+        assertEquals(2, center.streamSubtree(OFFICE_A).spliterator().estimateSize());
+        assertEquals(4, center.streamSubtree(TENANT).spliterator().estimateSize());
+
+        // A placeholder parent is counted once it's indexed
+        ContextPath team = ContextPath.of(34, 1L, ContextPath.of(33, 1L, TENANT));
+        center.put(instance(team));
+        assertEquals(5, center.streamSubtree(TENANT).spliterator().estimateSize());
+        center.put(instance(team.getParentPath()));
+        assertEquals(6, center.size());
+        assertEquals(6, center.streamSubtree(TENANT).spliterator().estimateSize());
+
+        // Updating an instance doesn't count it again
+        center.put(instance(OFFICE_A));
+        center.remove(TEAM_A1);
+        assertEquals(1, center.streamSubtree(OFFICE_A).spliterator().estimateSize());
+        assertEquals(5, center.streamSubtree(TENANT).spliterator().estimateSize());
+        assertEquals(5, center.size());
+    }
+
+    @Test
+    public void removeSubtree() {
+        assertEquals(2, center.remove(OFFICE_A));
+
+        assertNull(center.getContextInstance(OFFICE_A));
+        assertNull(center.getContextInstance(TEAM_A1));
+        assertEquals(2, center.size());
+        assertEquals(2, center.getNodeCount());
+    }
+
+    @Test
+    public void removeDropsOrphanPlaceholders() {
+        ContextPath deep = ContextPath.of(34, 1L, ContextPath.of(33, 1L, ContextPath.of(32, 1L)));
+        center.put(instance(deep));
+        assertEquals(7, center.getNodeCount());
+
+        assertEquals(1, center.remove(deep));
+        assertEquals(4, center.getNodeCount());
+    }
+
+    @Test
+    public void removeKeepsPlaceholderWithChildren() {
+        ContextPath parent = ContextPath.of(33, 1L, ContextPath.of(32, 1L));
+        ContextPath a = ContextPath.of(34, 1L, parent);
+        ContextPath b = ContextPath.of(34, 2L, parent);
+        center.put(instance(a));
+        center.put(instance(b));
+
+        center.remove(a);
+        List<ContextInstance> children = new ArrayList<>();
+        center.listChildren(parent, children);
+        assertEquals(paths(b), paths(children));
+
+        center.remove(b);
+        assertEquals(4, center.getNodeCount());
+    }
+
+    @Test
+    public void moveSubtree() {
+        ContextPath newOffice = ContextPath.of(23, 1L, ContextPath.of(42, 9L));
+        ContextPath newTeam = ContextPath.of(24, 1L, newOffice);
+        center.move(OFFICE_A, Arrays.asList(instance(newOffice), instance(newTeam)));
+
+        assertNull(center.getContextInstance(TEAM_A1));
+        assertNotNull(center.getContextInstance(newTeam));
+        assertEquals(4, center.size());
+        // Tenant, office B, placeholder of 42.9, and the moved two
+        assertEquals(5, center.getNodeCount());
+    }
+
+    @Test
+    public void plainInstanceIsShared() {
+        ContextPath team = new ContextPath(24, 2L, new ContextPath(23, 1L, new ContextPath(22, 1L)));
+        center.put(instance(team));
+
+        ContextInstance indexed = center.getContextInstance(team);
+        assertTrue(indexed instanceof SharedContextInstance);
+        assertSame(team.intern(), indexed.getContextPath());
+        assertSame(OFFICE_A.intern(), indexed.getContextPath().getParentPath());
+        assertSame(center.getContextInstance(OFFICE_A), indexed.getParent());
+    }
+
+    @Test
+    public void subtypeIsKept() {
+        ContextPath tenantPath = ContextPath.of(52, 1L);
+        Tenant tenant = (Tenant) Proxy.newProxyInstance(Tenant.class.getClassLoader(), new Class[]{Tenant.class},
+                (proxy, method, args) -> method.getName().equals("getContextPath") ? tenantPath : null);
+        center.put(tenant);
+
+        assertSame(tenant, center.getContextInstance(tenantPath));
+    }
+
+    @Test
+    public void indexKeepsOriginalInstanceWithoutSharing() {
+        center = new IndexedContextInstanceCenter(false);
+        AtomicInteger configReads = new AtomicInteger();
+        ContextInstance tenant = new TestContextInstance(new ContextPath(52, 1L)) {
+            @Override
+            public ContextConfig getContextConfig() {
+                configReads.incrementAndGet();
+                return null;
+            }
+        };
+        center.put(tenant);
+
+        assertSame(tenant, center.getContextInstance(ContextPath.of(52, 1L)));
+        assertEquals(0, configReads.get());
+    }
+
+    @Test
+    public void sharedInstanceResolvesParentFromIndex() {
+        ContextPath team = ContextPath.of(24, 2L, OFFICE_A);
+        center.put(SharedContextInstance.of(instance(team), center));
+
+        assertSame(center.getContextInstance(OFFICE_A), center.getContextInstance(team).getParent());
+    }
+
+    private static Set<ContextPath> paths(ContextPath... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
+    private static Set<ContextPath> paths(List<ContextInstance> instances) {
+        return instances.stream().map(ContextInstance::getContextPath).collect(Collectors.toSet());
+    }
+
+    static ContextInstance instance(ContextPath path) {
+        return new TestContextInstance(path);
+    }
+
+    static class TestContextInstance implements ContextInstance {
+        private final ContextPath contextPath;
+
+        TestContextInstance(ContextPath contextPath) {
+            this.contextPath = contextPath;
+        }
+
+        @Override
+        public Long getInstanceId() {
+            return contextPath.getInstanceId();
+        }
+
+        @Override
+        public String getInstanceName() {
+            return contextPath.getAbsoluteValue();
+        }
+
+        @Override
+        public String getCode() {
+            return null;
+        }
+
+        @Override
+        public Long getDetailObjectId() {
+            return null;
+        }
+
+        @Override
+        public ContextInstance getParent() {
+            return null;
+        }
+
+        @Override
+        public ContextInstance getTopParent() {
+            return null;
+        }
+
+        @Override
+        public ContextPath getContextPath() {
+            return contextPath;
+        }
+
+        @Override
+        public ContextType getContextType() {
+            return null;
+        }
+
+        @Override
+        public ContextConfig getContextConfig() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.context;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class TemplateFallbackResolverTest {
+
+    @Test
+    public void fallbackChain() {
+        TemplateFallbackResolver resolver = new TemplateFallbackResolver();
+        List<ContextPath> chain = resolver.getFallbackChain(new ContextPath(23, 1L, new ContextPath(22, 1L)));
+
+        assertEquals(Arrays.asList(
+                ContextPath.of(23, 1L, ContextPath.of(22, 1L)),
+                ContextPath.of(23, 0L, ContextPath.of(22, 1L)),
+                ContextPath.of(23, 0L, ContextPath.of(22, 0L))), chain);
+        for (ContextPath path : chain) {
+            assertSame(path, path.intern());
+        }
+    }
+
+    @Test
+    public void equalPathsShareChain() {
+        TemplateFallbackResolver resolver = new TemplateFallbackResolver();
+        List<ContextPath> chain = resolver.getFallbackChain(ContextPath.of(33, 1L, ContextPath.of(32, 1L)));
+
+        assertSame(chain, resolver.getFallbackChain(new ContextPath(33, 1L, new ContextPath(32, 1L))));
+    }
+
+    @Test
+    public void resolveRemembersLevel() {
+        TemplateFallbackResolver resolver = new TemplateFallbackResolver();
+        ContextPath template = ContextPath.of(43, 0L, ContextPath.of(42, 1L));
+        AtomicInteger lookups = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            String value = resolver.resolve("scope", new ContextPath(43, 1L, new ContextPath(42, 1L)), path -> {
+                lookups.incrementAndGet();
+                return path.equals(template) ? "config" : null;
+            });
+            assertEquals("config", value);
+        }
+        // Searched once, then looked up at the remembered level
+        assertEquals(2 + 2, lookups.get());
+    }
+}
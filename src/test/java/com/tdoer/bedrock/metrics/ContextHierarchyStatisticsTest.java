@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+import com.tdoer.bedrock.context.ContextInstance;
+import com.tdoer.bedrock.context.ContextPath;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ContextHierarchyStatisticsTest {
+
+    private static final ContextPath TOP = ContextPath.of(22, 1L);
+
+    private final ContextHierarchyStatistics statistics = new ContextHierarchyStatistics();
+
+    @Test
+    public void depthAndTypeAreCounted() {
+        statistics.recordInstance(instance(TOP));
+        statistics.recordInstance(instance(ContextPath.of(23, 1L, TOP)));
+        statistics.recordInstance(instance(ContextPath.of(23, 2L, TOP)));
+        statistics.recordInstance(instance(null));
+        statistics.recordInstance(null);
+
+        assertEquals(3, statistics.getServedCount());
+        long[] depths = statistics.getDepthHistogram();
+        assertEquals(ContextHierarchyStatistics.DEPTH_BUCKETS, depths.length);
+        assertEquals(1, depths[0]);
+        assertEquals(2, depths[1]);
+        assertEquals(2, statistics.getMaxDepth());
+        Map<Integer, Long> types = statistics.getInstancesPerType();
+        assertEquals(Long.valueOf(1), types.get(22));
+        assertEquals(Long.valueOf(2), types.get(23));
+    }
+
+    @Test
+    public void deepPathsShareTheLastBucket() {
+        ContextPath path = TOP;
+        for (int i = 1; i < 40; i++) {
+            path = ContextPath.of(22 + i, 1L, path);
+        }
+        statistics.recordInstance(instance(path));
+
+        assertEquals(1, statistics.getDepthHistogram()[ContextHierarchyStatistics.DEPTH_BUCKETS - 1]);
+        assertEquals(40, statistics.getMaxDepth());
+    }
+
+    @Test
+    public void fanOutIsBucketedByPowerOfTwo() {
+        int[] children = {0, 1, 2, 3, 4, 7, 8, Integer.MAX_VALUE};
+        for (int n : children) {
+            statistics.recordFanOut(n);
+        }
+
+        long[] fanOuts = statistics.getFanOutHistogram();
+        assertEquals(1, fanOuts[0]);
+        assertEquals(1, fanOuts[1]);
+        assertEquals(2, fanOuts[2]);
+        assertEquals(2, fanOuts[3]);
+        assertEquals(1, fanOuts[4]);
+        assertEquals(1, fanOuts[ContextHierarchyStatistics.FAN_OUT_BUCKETS - 1]);
+        assertEquals(Integer.MAX_VALUE, statistics.getMaxFanOut());
+    }
+
+    @Test
+    public void mbeanViewsAndResetsHistograms() throws Exception {
+        statistics.recordInstance(instance(TOP));
+        statistics.recordFanOut(2);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ContextHierarchyStatistics.DEFAULT_OBJECT_NAME + ",name=test");
+        server.registerMBean(statistics, name);
+        try {
+            assertEquals(1L, server.getAttribute(name, "ServedCount"));
+            assertEquals(1, ((long[]) server.getAttribute(name, "DepthHistogram"))[0]);
+            assertEquals(1, ((long[]) server.getAttribute(name, "FanOutHistogram"))[2]);
+            assertEquals(2, server.getAttribute(name, "MaxFanOut"));
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "ServedCount"));
+            assertEquals(0, statistics.getDepthHistogram()[0]);
+            assertTrue(statistics.getInstancesPerType().isEmpty());
+            assertEquals(0, statistics.getMaxFanOut());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private static ContextInstance instance(ContextPath contextPath) {
+        return (ContextInstance) Proxy.newProxyInstance(ContextInstance.class.getClassLoader(), new Class[]{ContextInstance.class},
+                (proxy, m, args) -> m.getName().equals("getContextPath") ? contextPath : null);
+    }
+}
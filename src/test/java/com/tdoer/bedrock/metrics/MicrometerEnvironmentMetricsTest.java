@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class MicrometerEnvironmentMetricsTest {
+
+    private SimpleMeterRegistry registry;
+
+    private MicrometerEnvironmentMetrics metrics;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new MicrometerEnvironmentMetrics(registry);
+    }
+
+    @Test
+    public void timerIsRegisteredOncePerStageAndOutcome() {
+        metrics.recordStage(EnvironmentStage.PARSE, 0, 1000);
+        metrics.recordStage(EnvironmentStage.PARSE, 0, 2000);
+        metrics.recordStage(EnvironmentStage.PARSE, 40001, 3000);
+        metrics.recordStage(EnvironmentStage.VERIFY, 0, 4000);
+
+        assertEquals(3, registry.getMeters().size());
+        assertEquals(2, timer("parse", "0").count());
+        assertEquals(1, timer("parse", "40001").count());
+        assertEquals(1, timer("verify", "0").count());
+    }
+
+    @Test
+    public void counterIsRegisteredOncePerStageAndOutcome() {
+        metrics.increment(EnvironmentStage.ENVIRONMENT_CACHE_HIT, 0);
+        metrics.increment(EnvironmentStage.ENVIRONMENT_CACHE_HIT, 0);
+        metrics.increment(EnvironmentStage.NEGATIVE_CACHE_HIT, 40001);
+
+        assertEquals(2, registry.getMeters().size());
+        assertEquals(2, counter("environment_cache_hit", "0").count(), 0);
+        assertEquals(1, counter("negative_cache_hit", "40001").count(), 0);
+    }
+
+    @Test
+    public void metersAreNamedByPrefix() {
+        new MicrometerEnvironmentMetrics(registry, "custom").recordStage(EnvironmentStage.PARSE, 0, 1000);
+
+        assertNotNull(registry.find("custom.stage").tag("stage", "parse").tag("outcome", "0").timer());
+        assertNull(registry.find(MicrometerEnvironmentMetrics.DEFAULT_PREFIX + ".stage").timer());
+    }
+
+    private Timer timer(String stage, String outcome) {
+        Timer timer = registry.find(MicrometerEnvironmentMetrics.DEFAULT_PREFIX + ".stage")
+                .tag("stage", stage).tag("outcome", outcome).timer();
+        assertNotNull(timer);
+        return timer;
+    }
+
+    private Counter counter(String stage, String outcome) {
+        Counter counter = registry.find(MicrometerEnvironmentMetrics.DEFAULT_PREFIX + ".count")
+                .tag("stage", stage).tag("outcome", outcome).counter();
+        assertNotNull(counter);
+        return counter;
+    }
+}
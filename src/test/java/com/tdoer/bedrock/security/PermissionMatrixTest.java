@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.security;
+
+import com.tdoer.bedrock.application.ApplicationResource;
+import com.tdoer.bedrock.context.ContextConfigCenter;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextRole;
+import com.tdoer.bedrock.context.RoleAuthority;
+import com.tdoer.bedrock.service.ServiceMethod;
+import com.tdoer.bedrock.service.ServiceMethodIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class PermissionMatrixTest {
+
+    private static final Long USER_ID = 7L;
+
+    private static final Long ROLE_ID = 1L;
+
+    private static final ContextPath CONTEXT = ContextPath.of(22, 1L);
+
+    private final ServiceMethod method = proxy(ServiceMethod.class, "getId", 100L);
+
+    private volatile boolean granted;
+
+    private volatile boolean assigned;
+
+    /**
+     * Name of the method where the load in flight pauses
+     */
+    private volatile String pauseAt;
+
+    private volatile CountDownLatch loading;
+
+    private volatile CountDownLatch release;
+
+    private PermissionMatrix matrix;
+
+    private ServiceMethodIndex methodIndex;
+
+    private ContextRole role;
+
+    @Before
+    public void setUp() {
+        granted = true;
+        assigned = true;
+        ApplicationResource resource = proxy(ApplicationResource.class, "listServiceMethods", null);
+        RoleAuthority authority = proxy(RoleAuthority.class, "getResource", resource);
+        role = (ContextRole) Proxy.newProxyInstance(ContextRole.class.getClassLoader(), new Class[]{ContextRole.class},
+                (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getId":
+                            return ROLE_ID;
+                        case "listAuthorities":
+                            if (granted) {
+                                list(args).add(authority);
+                            }
+                            pause("listAuthorities");
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        ContextConfigCenter center = (ContextConfigCenter) Proxy.newProxyInstance(ContextConfigCenter.class.getClassLoader(),
+                new Class[]{ContextConfigCenter.class}, (proxy, m, args) -> {
+                    if (m.getName().equals("listUserRoles") && args.length == 3) {
+                        if (assigned) {
+                            list(args).add(role);
+                        }
+                        pause("listUserRoles");
+                    }
+                    return null;
+                });
+        methodIndex = new ServiceMethodIndex();
+        methodIndex.indexOf(method.getId());
+        matrix = new PermissionMatrix(center, methodIndex);
+    }
+
+    @Test
+    public void permitIsCached() {
+        assertTrue(matrix.permit(USER_ID, CONTEXT, method));
+
+        granted = false;
+        assertTrue(matrix.permit(USER_ID, CONTEXT, method));
+
+        matrix.invalidateRole(ROLE_ID);
+        assertFalse(matrix.permit(USER_ID, CONTEXT, method));
+    }
+
+    @Test
+    public void invalidatingRoleKeepsOtherRoles() {
+        assertTrue(matrix.permit(USER_ID, CONTEXT, method));
+
+        granted = false;
+        matrix.invalidateRole(ROLE_ID + 1);
+        assertTrue(matrix.permit(USER_ID, CONTEXT, method));
+
+        matrix.invalidateAll();
+        assertFalse(matrix.permit(USER_ID, CONTEXT, method));
+    }
+
+    @Test
+    public void bitsAreTrimmedToHighestPermitted() {
+        for (long id = 1; id <= 10000; id++) {
+            methodIndex.indexOf(id);
+        }
+
+        assertTrue(matrix.permit(role, method));
+        assertEquals(64, matrix.getRolePermissions(role).size());
+        assertEquals(64, matrix.getUserPermissions(USER_ID, CONTEXT).size());
+    }
+
+    @Test
+    public void revokeDuringLoadIsNotLost() throws Exception {
+        Future<Boolean> inFlight = loadInFlight("listAuthorities");
+
+        granted = false;
+        matrix.invalidateRole(ROLE_ID);
+        release.countDown();
+
+        // The load read the permission before it was revoked
+        assertTrue(inFlight.get(5, TimeUnit.SECONDS));
+        assertFalse(matrix.permit(USER_ID, CONTEXT, method));
+    }
+
+    @Test
+    public void unassignDuringLoadIsNotLost() throws Exception {
+        Future<Boolean> inFlight = loadInFlight("listUserRoles");
+
+        assigned = false;
+        matrix.invalidateUser(USER_ID);
+        release.countDown();
+
+        assertTrue(inFlight.get(5, TimeUnit.SECONDS));
+        assertFalse(matrix.permit(USER_ID, CONTEXT, method));
+    }
+
+    /**
+     * Start a permission check in another thread and wait until it's paused in the middle of loading
+     */
+    private Future<Boolean> loadInFlight(String pauseAt) throws InterruptedException {
+        this.pauseAt = pauseAt;
+        loading = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> ret = executor.submit(() -> matrix.permit(USER_ID, CONTEXT, method));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            return ret;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void pause(String where) throws InterruptedException {
+        CountDownLatch latch = loading;
+        if (where.equals(pauseAt) && latch != null && latch.getCount() > 0) {
+            latch.countDown();
+            release.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> list(Object[] args) {
+        return (List<T>) args[args.length - 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, String name, Object value) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, m, args) -> {
+            if (m.getName().equals("listServiceMethods")) {
+                list(args).add(method);
+                return null;
+            }
+            return m.getName().equals(name) ? value : null;
+        });
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.security;
+
+import com.tdoer.bedrock.application.Action;
+import com.tdoer.bedrock.application.Page;
+import com.tdoer.bedrock.context.ContextConfigCenter;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.PublicAuthority;
+import com.tdoer.bedrock.product.ClientResource;
+import com.tdoer.bedrock.resource.Resource;
+import com.tdoer.bedrock.service.ServiceMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class PublicRouteRegistryTest {
+
+    private static final ContextPath CONTEXT = ContextPath.of(22, 1L);
+
+    private PublicRouteRegistry registry;
+
+    @Before
+    public void setUp() {
+        ServiceMethod shared = method(3L, "/shared");
+        Action action = resource(Action.class, Arrays.asList(method(1L, "/pages/1/save"), shared), null);
+        Page page = resource(Page.class, Arrays.asList(method(2L, "/pages/1"), shared), Collections.singletonList(action));
+        Action standalone = resource(Action.class, Collections.singletonList(method(4L, "/actions/4")), null);
+        ClientResource navigation = resource(ClientResource.class, null, null);
+        List<Resource> resources = Arrays.asList(page, standalone, navigation);
+
+        ContextConfigCenter center = (ContextConfigCenter) Proxy.newProxyInstance(ContextConfigCenter.class.getClassLoader(),
+                new Class[]{ContextConfigCenter.class}, (proxy, m, args) -> {
+                    if (m.getName().equals("listPublicAuthorities")) {
+                        for (Resource resource : resources) {
+                            list(args).add(proxy(PublicAuthority.class, (p, am, aargs) -> am.getName().equals("getResource") ? resource : null));
+                        }
+                    }
+                    return null;
+                });
+        registry = new PublicRouteRegistry(center);
+    }
+
+    @Test
+    public void pageAndItsActionsArePublic() {
+        assertTrue(registry.isPublic("p", "c", 1L, CONTEXT, "GET", "/pages/1"));
+        assertTrue(registry.isPublic("p", "c", 1L, CONTEXT, "POST", "/pages/1/save"));
+        assertTrue(registry.isPublic("p", "c", 1L, CONTEXT, "GET", "/shared"));
+    }
+
+    @Test
+    public void actionIsPublic() {
+        assertTrue(registry.isPublic("p", "c", 1L, CONTEXT, "GET", "/actions/4"));
+        assertFalse(registry.isPublic("p", "c", 1L, CONTEXT, "GET", "/actions/5"));
+    }
+
+    private static ServiceMethod method(Long id, String uri) {
+        return proxy(ServiceMethod.class, (p, m, args) -> {
+            switch (m.getName()) {
+                case "getId":
+                    return id;
+                case "getURI":
+                    return uri;
+                case "match":
+                    return uri.equals(args[1]);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static <T extends Resource> T resource(Class<T> type, List<ServiceMethod> methods, List<Action> actions) {
+        return proxy(type, (p, m, args) -> {
+            switch (m.getName()) {
+                case "listServiceMethods":
+                    list(args).addAll(methods);
+                    return null;
+                case "listCurrentActions":
+                    list(args).addAll(actions);
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> list(Object[] args) {
+        return (List<T>) args[args.length - 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, handler);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.security;
+
+import com.tdoer.bedrock.CloudEnvironment;
+import com.tdoer.bedrock.CloudEnvironmentHolder;
+import com.tdoer.bedrock.EnvironmentDigest;
+import com.tdoer.bedrock.context.ContextConfig;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.ContextRole;
+import com.tdoer.bedrock.tenant.BaseUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class UserDetailsTest {
+
+    private final AtomicInteger resolved = new AtomicInteger();
+
+    private UserAuthoritiesCache defaultCache;
+
+    @Before
+    public void setUp() {
+        defaultCache = UserAuthoritiesCache.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        UserAuthoritiesCache.setDefault(defaultCache);
+        CloudEnvironmentHolder.clearEnvironment();
+    }
+
+    @Test
+    public void defaultCacheIsUsed() {
+        UserAuthoritiesCache cache = new UserAuthoritiesCache();
+        UserAuthoritiesCache.setDefault(cache);
+        CloudEnvironmentHolder.setEnvironment(environment(ContextPath.of(22, 1L)));
+
+        UserDetails details = new UserDetails(user(1L));
+        assertEquals(1, details.getAuthorities().size());
+        assertEquals(1, new UserDetails(user(1L)).getAuthorities().size());
+        assertEquals(1, resolved.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void rolesAreResolvedOnEachCallWithoutCache() {
+        UserAuthoritiesCache.setDefault(null);
+        CloudEnvironmentHolder.setEnvironment(environment(ContextPath.of(22, 1L)));
+
+        UserDetails details = new UserDetails(user(1L));
+        details.getAuthorities();
+        details.getAuthorities();
+        assertEquals(2, resolved.get());
+    }
+
+    @Test
+    public void bumpedVersionInvalidatesRoles() {
+        UserAuthoritiesCache cache = new UserAuthoritiesCache();
+        CloudEnvironmentHolder.setEnvironment(environment(ContextPath.of(22, 1L)));
+
+        UserDetails details = new UserDetails(user(1L), cache);
+        details.getAuthorities();
+        details.getAuthorities();
+        assertEquals(1, resolved.get());
+
+        cache.bumpVersion();
+        details.getAuthorities();
+        assertEquals(2, resolved.get());
+        details.getAuthorities();
+        assertEquals(2, resolved.get());
+    }
+
+    @Test
+    public void switchedContextPathResolvesRoles() {
+        UserAuthoritiesCache cache = new UserAuthoritiesCache();
+        UserDetails details = new UserDetails(user(1L), cache);
+
+        CloudEnvironmentHolder.setEnvironment(environment(ContextPath.of(22, 1L)));
+        String first = details.getAuthorities().iterator().next().getAuthority();
+        CloudEnvironmentHolder.setEnvironment(environment(ContextPath.of(22, 2L)));
+        String second = details.getAuthorities().iterator().next().getAuthority();
+        assertEquals(2, resolved.get());
+        assertNotEquals(first, second);
+
+        CloudEnvironmentHolder.setEnvironment(environment(ContextPath.of(22, 1L)));
+        assertEquals(first, details.getAuthorities().iterator().next().getAuthority());
+        assertEquals(2, resolved.get());
+        assertEquals(2, cache.size());
+    }
+
+    private static BaseUser user(Long id) {
+        BaseUser user = new BaseUser();
+        user.setId(id);
+        return user;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CloudEnvironment environment(ContextPath contextPath) {
+        ContextConfig config = (ContextConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContextConfig.class}, (proxy, method, args) -> {
+                    if ("listUserRoles".equals(method.getName())) {
+                        resolved.incrementAndGet();
+                        ((List<ContextRole>) args[1]).add(role(contextPath.getAbsoluteValue()));
+                    }
+                    return null;
+                });
+        EnvironmentDigest digest = new EnvironmentDigest();
+        digest.setTenantId(1L);
+        return new CloudEnvironment(digest, Locale.CHINA) {
+            @Override
+            public ContextConfig getContextConfig() {
+                return config;
+            }
+
+            @Override
+            public ContextPath getContextPath() {
+                return contextPath;
+            }
+        };
+    }
+
+    private ContextRole role(String authority) {
+        return (ContextRole) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContextRole.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAuthority":
+                            return authority;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
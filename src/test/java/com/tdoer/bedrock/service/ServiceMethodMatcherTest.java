@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.service;
+
+import com.tdoer.bedrock.context.ContextPath;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class ServiceMethodMatcherTest {
+
+    private static final String[] PATHS = {
+            "/users", "/users/", "//users", "//users/", "/users//1", "/users/1", "/users/1/", "/users/me",
+            "/users/1/roles", "/users/1/roles/2", "/Users/1", "users/1", "/files", "/files/", "/files/1",
+            "/files/a.json", "/files/a.json/x", "/files/abc", "/files/a/c", "/static", "/static/",
+            "/static/a/b/c.css", "/static//a", "/orders/1/items/2", "/orders//items/2", "/", "", "/users/1?x=1"
+    };
+
+    private final AtomicInteger matchCalls = new AtomicInteger();
+
+    private long nextId = 1;
+
+    @Test
+    public void agreesWithServiceMethodMatch() {
+        List<ServiceMethod> methods = Arrays.asList(
+                method(HttpMethod.GET, "/users"),
+                method(HttpMethod.GET, "/users/{id}"),
+                method(HttpMethod.GET, "/users/me"),
+                method(HttpMethod.GET, "/users/*/roles"),
+                method(null, "/users/{id}/roles/{roleId}"),
+                method(HttpMethod.POST, "/users/"),
+                method(HttpMethod.GET, "/files/{id}"),
+                method(HttpMethod.GET, "/files/{name}.json"),
+                method(HttpMethod.GET, "/files/a?c"),
+                method(HttpMethod.GET, "/static/**"),
+                method(HttpMethod.GET, "/orders/{id}/items/{itemId}"),
+                method(HttpMethod.GET, "/"));
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(methods);
+
+        for (String httpMethod : new String[]{"GET", "POST", "DELETE"}) {
+            for (String path : PATHS) {
+                ServiceMethod matched = matcher.match(httpMethod, path);
+                boolean any = methods.stream().anyMatch(sm -> sm.match(httpMethod, path));
+                assertEquals(httpMethod + " " + path, any, matched != null);
+                if (matched != null) {
+                    assertTrue(httpMethod + " " + path, matched.match(httpMethod, path));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void slashesAreNotCollapsed() {
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(Collections.singletonList(method(HttpMethod.GET, "/users")));
+
+        assertNotNull(matcher.match("GET", "/users"));
+        assertNull(matcher.match("GET", "//users/"));
+        assertNull(matcher.match("GET", "/users/"));
+    }
+
+    @Test
+    public void mostSpecificWins() {
+        ServiceMethod byId = method(HttpMethod.GET, "/files/{id}");
+        ServiceMethod json = method(HttpMethod.GET, "/files/{name}.json");
+        ServiceMethod all = method(HttpMethod.GET, "/files/**");
+        ServiceMethod me = method(HttpMethod.GET, "/users/me");
+        ServiceMethod user = method(HttpMethod.GET, "/users/{id}");
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(Arrays.asList(all, byId, json, user, me));
+
+        assertSame(json, matcher.match("GET", "/files/a.json"));
+        assertSame(byId, matcher.match("GET", "/files/a"));
+        assertSame(all, matcher.match("GET", "/files/a/b"));
+        assertSame(me, matcher.match("GET", "/users/me"));
+        assertSame(user, matcher.match("GET", "/users/1"));
+    }
+
+    @Test
+    public void sharedUriKeepsAll() {
+        ServiceMethod get = method(HttpMethod.GET, "/users/{id}");
+        ServiceMethod any = method(null, "/users/{userId}");
+        ServiceMethod health = method(HttpMethod.GET, "/health");
+        ServiceMethod otherHealth = method(HttpMethod.GET, "/health");
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(Arrays.asList(get, any, health, otherHealth));
+
+        assertSame(get, matcher.match("GET", "/users/1"));
+        assertSame(any, matcher.match("POST", "/users/1"));
+        assertSame(health, matcher.match("GET", "/health"));
+    }
+
+    @Test
+    public void sharedUncompiledUriKeepsAll() {
+        ServiceMethod first = method(HttpMethod.GET, "/files/{name}.json");
+        ServiceMethod second = method(null, "/files/{name}.json");
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(Arrays.asList(first, second));
+
+        assertSame(first, matcher.match("GET", "/files/a.json"));
+        assertSame(second, matcher.match("DELETE", "/files/a.json"));
+    }
+
+    @Test
+    public void sameServiceMethodTwiceIsKept() {
+        ServiceMethod sm = method(HttpMethod.GET, "/users/{id}");
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(Arrays.asList(sm, sm));
+
+        assertSame(sm, matcher.match("GET", "/users/1"));
+    }
+
+    @Test
+    public void matchChecksOnlyCandidates() {
+        List<ServiceMethod> methods = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            methods.add(method(HttpMethod.GET, "/service" + i + "/items/{id}"));
+        }
+        ServiceMethodMatcher matcher = new ServiceMethodMatcher(methods);
+
+        matchCalls.set(0);
+        assertSame(methods.get(500), matcher.match("GET", "/service500/items/1"));
+        assertEquals(1, matchCalls.get());
+    }
+
+    private ServiceMethod method(HttpMethod httpMethod, String uri) {
+        return new TestServiceMethod(nextId++, httpMethod, uri, matchCalls);
+    }
+
+    /**
+     * Service method matching by the Ant-style rules: "*" and variables match one segment, "**"
+     * matches zero or more segments, "?" matches one character, and slashes are matched exactly
+     */
+    static class TestServiceMethod implements ServiceMethod {
+        private final Long id;
+
+        private final HttpMethod httpMethod;
+
+        private final String uri;
+
+        private final Pattern pattern;
+
+        private final AtomicInteger matchCalls;
+
+        TestServiceMethod(Long id, HttpMethod httpMethod, String uri, AtomicInteger matchCalls) {
+            this.id = id;
+            this.httpMethod = httpMethod;
+            this.uri = uri;
+            this.pattern = Pattern.compile(toRegex(uri));
+            this.matchCalls = matchCalls;
+        }
+
+        private static String toRegex(String uri) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < uri.length(); i++) {
+                char c = uri.charAt(i);
+                if (c == '/' && uri.startsWith("**", i + 1) && (i + 3 == uri.length() || uri.charAt(i + 3) == '/')) {
+                    sb.append("(?:/.*)?");
+                    i += 2;
+                } else if (c == '*') {
+                    sb.append("[^/]*");
+                } else if (c == '?') {
+                    sb.append("[^/]");
+                } else if (c == '{') {
+                    sb.append("[^/]+");
+                    i = uri.indexOf('}', i);
+                } else {
+                    sb.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String getServiceId() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return uri;
+        }
+
+        @Override
+        public HttpMethod getHttpMethod() {
+            return httpMethod;
+        }
+
+        @Override
+        public String getURI() {
+            return uri;
+        }
+
+        @Override
+        public boolean match(String httpMethod, String path) {
+            matchCalls.incrementAndGet();
+            if (this.httpMethod != null && !this.httpMethod.name().equals(httpMethod)) {
+                return false;
+            }
+            int query = path.indexOf('?');
+            return pattern.matcher(query < 0 ? path : path.substring(0, query)).matches();
+        }
+
+        @Override
+        public String getProductId() {
+            return null;
+        }
+
+        @Override
+        public Long getTenantId() {
+            return null;
+        }
+
+        @Override
+        public String getClientId() {
+            return null;
+        }
+
+        @Override
+        public ContextPath getContextPath() {
+            return null;
+        }
+    }
+}
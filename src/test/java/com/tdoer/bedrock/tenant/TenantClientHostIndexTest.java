@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.tenant;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class TenantClientHostIndexTest {
+
+    @SuppressWarnings("unchecked")
+    private static TenantClient tenantClient(Long tenantId, String clientId, String... hosts) {
+        return (TenantClient) Proxy.newProxyInstance(TenantClient.class.getClassLoader(), new Class[]{TenantClient.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTenantId":
+                            return tenantId;
+                        case "getClientId":
+                            return clientId;
+                        case "listHosts":
+                            ((List<String>) args[0]).addAll(Arrays.asList(hosts));
+                            return null;
+                        case "toString":
+                            return tenantId + "/" + clientId;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void exactHostTakesPrecedenceOverWildcard() {
+        TenantClientHostIndex index = new TenantClientHostIndex();
+        TenantClient a = tenantClient(1L, "a", "*.example.com");
+        TenantClient b = tenantClient(1L, "b", "www.example.com");
+        index.register(a);
+        index.register(b);
+
+        assertSame(b, index.find("WWW.example.com."));
+        assertSame(a, index.find("shop.example.com"));
+        assertNull(index.find("example.com"));
+    }
+
+    @Test
+    public void reRegisteringFormerOwnerKeepsMovedExactHost() {
+        TenantClientHostIndex index = new TenantClientHostIndex();
+        index.register(tenantClient(1L, "a", "shop.example.com"));
+        TenantClient b = tenantClient(2L, "b", "shop.example.com");
+        index.register(b);
+
+        // Client a drops the host, which has moved to client b
+        index.register(tenantClient(1L, "a"));
+
+        assertSame(b, index.find("shop.example.com"));
+    }
+
+    @Test
+    public void reRegisteringFormerOwnerKeepsMovedWildcardHost() {
+        TenantClientHostIndex index = new TenantClientHostIndex();
+        index.register(tenantClient(1L, "a", "*.example.com"));
+        TenantClient b = tenantClient(2L, "b", "*.example.com");
+        index.register(b);
+
+        index.unregister(1L, "a");
+
+        assertSame(b, index.find("x.example.com"));
+    }
+
+    @Test
+    public void removedHostIsNotFound() {
+        TenantClientHostIndex index = new TenantClientHostIndex();
+        index.register(tenantClient(1L, "a", "a.example.com", "*.b.example.com"));
+
+        index.refreshTenant(1L, new TenantClient[0]);
+
+        assertNull(index.find("a.example.com"));
+        assertNull(index.find("x.b.example.com"));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+import com.tdoer.bedrock.CloudEnvironment;
+import com.tdoer.bedrock.CloudEnvironmentHolder;
+import com.tdoer.bedrock.EnvironmentDigest;
+import com.tdoer.bedrock.StacklessInvalidRequestException;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class CloudEnvironmentParseFilterTest {
+
+    private final AtomicInteger status = new AtomicInteger();
+
+    private final AtomicInteger chainCalls = new AtomicInteger();
+
+    @After
+    public void clearEnvironment() {
+        CloudEnvironmentHolder.clearEnvironment();
+    }
+
+    @Test
+    public void downstreamExceptionIsNotHandled() throws Exception {
+        ServletException downstream = new ServletException();
+        CloudEnvironmentParseFilter filter = filter(CloudEnvironmentParseFilterTest::environment);
+
+        try {
+            filter.doFilter(request(), response(), (req, res) -> {
+                chainCalls.incrementAndGet();
+                throw downstream;
+            });
+            fail("Downstream exception is swallowed");
+        } catch (ServletException e) {
+            assertSame(downstream, e);
+        }
+        assertEquals(1, chainCalls.get());
+        assertEquals(0, status.get());
+    }
+
+    @Test
+    public void invalidRequestIsRejected() throws Exception {
+        CloudEnvironmentParseFilter filter = filter(() -> {
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, "unknown.example.com");
+        });
+
+        filter.doFilter(request(), response(), chain());
+
+        assertEquals(0, chainCalls.get());
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, status.get());
+    }
+
+    @Test
+    public void failureIsRejected() throws Exception {
+        CloudEnvironmentParseFilter filter = filter(() -> {
+            throw new IllegalStateException();
+        });
+
+        filter.doFilter(request(), response(), chain());
+
+        assertEquals(0, chainCalls.get());
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, status.get());
+    }
+
+    @Test
+    public void suppressedRejectionDoesNotFormatMessage() throws Exception {
+        AtomicInteger messages = new AtomicInteger();
+        CloudEnvironmentParseFilter filter = filter(() -> {
+            throw new StacklessInvalidRequestException(BedrockErrorCodes.NO_TENANT_CLIENT_BY_HOST, "unknown.example.com") {
+                @Override
+                public String getMessage() {
+                    messages.incrementAndGet();
+                    return super.getMessage();
+                }
+            };
+        });
+        filter.setRejectLogger(new RateLimitedLogger(LoggerFactory.getLogger(getClass()), 1, 1, TimeUnit.HOURS));
+
+        filter.doFilter(request(), response(), chain());
+        filter.doFilter(request(), response(), chain());
+        filter.doFilter(request(), response(), chain());
+
+        assertEquals(1, messages.get());
+        assertEquals(0, chainCalls.get());
+    }
+
+    private static CloudEnvironment environment() {
+        EnvironmentDigest digest = new EnvironmentDigest();
+        digest.setTenantId(1L);
+        return new CloudEnvironment(digest, Locale.CHINA) {
+            @Override
+            public String toString() {
+                return "environment";
+            }
+        };
+    }
+
+    private static CloudEnvironmentParseFilter filter(Supplier<CloudEnvironment> parser) {
+        return new CloudEnvironmentParseFilter(new RequestCloudEnvironmentExtractor()) {
+            @Override
+            protected CloudEnvironment parseEnvironment(HttpServletRequest request, HttpServletResponse response) {
+                return parser.get();
+            }
+
+            @Override
+            protected void verifyEnvironment(CloudEnvironment env) {
+            }
+
+            @Override
+            protected void setResponseHeader(HttpServletRequest request, HttpServletResponse response, CloudEnvironment environment) {
+            }
+        };
+    }
+
+    private FilterChain chain() {
+        return (req, res) -> chainCalls.incrementAndGet();
+    }
+
+    private static HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(), new Class[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getRequestURL")) {
+                        return new StringBuffer("http://localhost/test");
+                    }
+                    return null;
+                });
+    }
+
+    private HttpServletResponse response() {
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(), new Class[]{HttpServletResponse.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isCommitted":
+                            return false;
+                        case "setStatus":
+                            status.set((Integer) args[0]);
+                            return null;
+                        case "getOutputStream":
+                            return out;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+import com.tdoer.bedrock.CloudConstants;
+import com.tdoer.bedrock.InvalidRequestException;
+import com.tdoer.bedrock.ProviderFailedException;
+import com.tdoer.bedrock.context.ContextPath;
+import com.tdoer.bedrock.context.DefaultContextPathParser;
+import com.tdoer.bedrock.product.Client;
+import com.tdoer.bedrock.product.ClientConfigCenter;
+import com.tdoer.bedrock.product.Product;
+import com.tdoer.bedrock.tenant.RentalCenter;
+import com.tdoer.bedrock.tenant.Tenant;
+import com.tdoer.bedrock.tenant.TenantClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class RequestCloudEnvironmentExtractorTest {
+
+    private final AtomicInteger tenantClientLookups = new AtomicInteger();
+
+    private RequestCloudEnvironmentExtractor extractor;
+
+    private NegativeLookupCache negativeLookupCache;
+
+    @Before
+    public void setUp() {
+        extractor = new RequestCloudEnvironmentExtractor();
+        extractor.setContextPathParser(new DefaultContextPathParser());
+        extractor.setRentalCenter((RentalCenter) Proxy.newProxyInstance(RentalCenter.class.getClassLoader(),
+                new Class[]{RentalCenter.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getTenantClient")) {
+                        tenantClientLookups.incrementAndGet();
+                    }
+                    return null;
+                }));
+        negativeLookupCache = new NegativeLookupCache();
+        extractor.setNegativeLookupCache(negativeLookupCache);
+    }
+
+    @Test
+    public void unknownTenantClientIsInvalidatedHoweverWritten() {
+        for (String tenantId : new String[]{"007", "+7", "7"}) {
+            assertTenantClientRejected(tenantId);
+        }
+        // Looked up once, then rejected by the negative cache
+        assertEquals(1, tenantClientLookups.get());
+
+        negativeLookupCache.onTenantCreated(7L);
+        assertTenantClientRejected("007");
+        assertEquals(2, tenantClientLookups.get());
+    }
+
+    @Test
+    public void malformedTenantIdIsRejectedUpFront() {
+        assertTenantClientRejected("7x");
+        assertTenantClientRejected("99999999999999999999");
+        assertEquals(0, tenantClientLookups.get());
+    }
+
+    private void assertTenantClientRejected(String tenantId) {
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getParameter")) {
+                        if (CloudConstants.TENANT_ID.equals(args[0])) {
+                            return tenantId;
+                        }
+                        if (CloudConstants.CLIENT_ID.equals(args[0])) {
+                            return "web";
+                        }
+                    }
+                    return null;
+                });
+        try {
+            extractor.extractTenantClient(request);
+            fail("Unknown tenant client is accepted: " + tenantId);
+        } catch (InvalidRequestException e) {
+            assertEquals(BedrockErrorCodes.NO_TENANT_CLIENT_BY_IDS, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void slowResolutionTimesOut() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        InvocationHandler blocking = (proxy, method, args) -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        };
+        TenantClient tenantClient = stub(TenantClient.class, "getTenant", stub(Tenant.class, "getId", 1L),
+                "getClient", stub(Client.class, "getId", "web", "getProduct", stub(Product.class, "getId", "p1")));
+        RequestCloudEnvironmentExtractor slow = new RequestCloudEnvironmentExtractor() {
+            @Override
+            protected TenantClient extractTenantClient(HttpServletRequest request) {
+                return tenantClient;
+            }
+        };
+        slow.setRentalCenter(proxy(RentalCenter.class, blocking));
+        slow.setClientConfigCenter(proxy(ClientConfigCenter.class, blocking));
+        ExecutorService executor = Executors.newCachedThreadPool();
+        slow.setResolutionExecutor(executor);
+        slow.setResolutionTimeout(100);
+        long start = System.nanoTime();
+        try {
+            slow.extract(stub(HttpServletRequest.class));
+            fail("Slow resolution doesn't time out");
+        } catch (ProviderFailedException e) {
+            assertEquals(BedrockErrorCodes.ENV_RESOLUTION_TIMEOUT, e.getErrorCode());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        // Product rental and context installation were loaded at the same time
+        assertTrue(started.await(0, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    }
+
+    @Test
+    public void parseContextPath() {
+        assertSame(ContextPath.of(23, 1L, ContextPath.of(22, 1L)), extractor.parseContextPath("22.1-23.1"));
+    }
+
+    @Test
+    public void malformedContextPathIsInvalidRequest() {
+        String[] values = {"22.x", "22.1-", "-22.1", "22", "22.1-23.1.2"};
+        for (String value : values) {
+            try {
+                extractor.parseContextPath(value);
+                fail("Malformed context path is accepted: " + value);
+            } catch (InvalidRequestException e) {
+                assertEquals(BedrockErrorCodes.MALFORMED_CONTEXT_PATH, e.getErrorCode());
+                assertTrue(EnvironmentErrorResponse.isClientError(e.getErrorCode()));
+                // Neither the rejection nor its cause walks the stack
+                assertEquals(0, e.getStackTrace().length);
+                assertEquals(0, e.getCause().getStackTrace().length);
+            }
+        }
+    }
+
+    /**
+     * Stub returning the values of the (method name, value) pairs, and null for other methods
+     */
+    private static <T> T stub(Class<T> type, Object... pairs) {
+        return proxy(type, (proxy, method, args) -> {
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (method.getName().equals(pairs[i])) {
+                    return pairs[i + 1];
+                }
+            }
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, handler);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017-2019 T-Doer (tdoer.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tdoer.bedrock.web;
+
+import com.tdoer.bedrock.BedrockErrorCodes;
+import com.tdoer.bedrock.context.ContextPath;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @Description
+ * @author Htinker Hu (htinker@163.com)
+ * @create 2017-09-19
+ */
+public class VerificationResultCacheTest {
+
+    private static final ContextPath CONTEXT = new ContextPath(22, 1L);
+
+    private VerificationResultCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new VerificationResultCache();
+    }
+
+    @Test
+    public void outcomeIsCachedPerKey() {
+        long version = cache.getVersion();
+        cache.put(1L, "web", CONTEXT, "app", version, VerificationResultCache.PASSED);
+        cache.put(1L, "web", null, "app", version, BedrockErrorCodes.NO_CONTEXT_INSTANCE);
+
+        assertEquals(VerificationResultCache.PASSED, cache.get(1L, "web", CONTEXT, "app"));
+        assertEquals(BedrockErrorCodes.NO_CONTEXT_INSTANCE, cache.get(1L, "web", null, "app"));
+        assertEquals(-1, cache.get(1L, "web", CONTEXT, "other"));
+        assertEquals(-1, cache.get(2L, "web", CONTEXT, "app"));
+    }
+
+    @Test
+    public void bumpedVersionInvalidatesOutcomes() {
+        cache.put(1L, "web", CONTEXT, "app", cache.getVersion(), VerificationResultCache.PASSED);
+
+        long version = cache.bumpVersion();
+        assertEquals(version, cache.getVersion());
+        assertEquals(-1, cache.get(1L, "web", CONTEXT, "app"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void outcomeOfOlderVersionIsNotPut() {
+        // Verified before the configuration changed
+        long version = cache.getVersion();
+        cache.bumpVersion();
+        cache.put(1L, "web", CONTEXT, "app", version, VerificationResultCache.PASSED);
+
+        assertEquals(-1, cache.get(1L, "web", CONTEXT, "app"));
+        assertEquals(0, cache.size());
+    }
+}